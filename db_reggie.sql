@@ -96,7 +96,9 @@ CREATE TABLE `dish` (
   `update_user` bigint(20) NOT NULL COMMENT '修改人',
   `is_deleted` int(11) NOT NULL DEFAULT '0' COMMENT '是否删除',
   PRIMARY KEY (`id`) USING BTREE,
-  UNIQUE KEY `idx_dish_name` (`name`)
+  UNIQUE KEY `idx_dish_name` (`name`),
+  KEY `idx_dish_update_time` (`update_time`,`id`),
+  FULLTEXT KEY `ft_dish_name` (`name`) WITH PARSER ngram
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin COMMENT='菜品管理';
 
 -- ----------------------------
@@ -228,7 +230,8 @@ CREATE TABLE `employee` (
   `create_user` bigint(20) NOT NULL COMMENT '创建人',
   `update_user` bigint(20) NOT NULL COMMENT '修改人',
   PRIMARY KEY (`id`) USING BTREE,
-  UNIQUE KEY `idx_username` (`username`)
+  UNIQUE KEY `idx_username` (`username`),
+  FULLTEXT KEY `ft_employee_name` (`name`) WITH PARSER ngram
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin COMMENT='员工信息';
 
 -- ----------------------------
@@ -255,8 +258,16 @@ CREATE TABLE `orders` (
   `address` varchar(255) COLLATE utf8_bin DEFAULT NULL,
   `user_name` varchar(255) COLLATE utf8_bin DEFAULT NULL,
   `consignee` varchar(255) COLLATE utf8_bin DEFAULT NULL,
-  PRIMARY KEY (`id`) USING BTREE
-) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin COMMENT='订单表';
+  PRIMARY KEY (`id`,`order_time`) USING BTREE,
+  KEY `idx_orders_number` (`number`),
+  KEY `idx_orders_order_time` (`order_time`,`id`),
+  KEY `idx_orders_user_id_order_time` (`user_id`,`order_time`,`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin COMMENT='订单表'
+-- 按下单时间每月一个分区，主键必须包含分区列；后续月份的分区由OrderPartitionMaintainer自动创建
+PARTITION BY RANGE COLUMNS(`order_time`) (
+  PARTITION p202107 VALUES LESS THAN ('2021-08-01'),
+  PARTITION pmax VALUES LESS THAN (MAXVALUE)
+);
 
 -- ----------------------------
 -- Records of orders
@@ -276,13 +287,83 @@ CREATE TABLE `order_detail` (
   `dish_flavor` varchar(50) COLLATE utf8_bin DEFAULT NULL COMMENT '口味',
   `number` int(11) NOT NULL DEFAULT '1' COMMENT '数量',
   `amount` decimal(10,2) NOT NULL COMMENT '金额',
-  PRIMARY KEY (`id`) USING BTREE
+  PRIMARY KEY (`id`) USING BTREE,
+  KEY `idx_order_detail_order_id` (`order_id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin COMMENT='订单明细表';
 
 -- ----------------------------
 -- Records of order_detail
 -- ----------------------------
 
+-- ----------------------------
+-- Table structure for orders_archive
+-- ----------------------------
+DROP TABLE IF EXISTS `orders_archive`;
+CREATE TABLE `orders_archive` (
+  `id` bigint(20) NOT NULL COMMENT '主键',
+  `number` varchar(50) COLLATE utf8_bin DEFAULT NULL COMMENT '订单号',
+  `status` int(11) NOT NULL DEFAULT '1' COMMENT '订单状态 1待付款，2待派送，3已派送，4已完成，5已取消',
+  `user_id` bigint(20) NOT NULL COMMENT '下单用户',
+  `address_book_id` bigint(20) NOT NULL COMMENT '地址id',
+  `order_time` datetime NOT NULL COMMENT '下单时间',
+  `checkout_time` datetime NOT NULL COMMENT '结账时间',
+  `pay_method` int(11) NOT NULL DEFAULT '1' COMMENT '支付方式 1微信,2支付宝',
+  `amount` decimal(10,2) NOT NULL COMMENT '实收金额',
+  `remark` varchar(100) COLLATE utf8_bin DEFAULT NULL COMMENT '备注',
+  `phone` varchar(255) COLLATE utf8_bin DEFAULT NULL,
+  `address` varchar(255) COLLATE utf8_bin DEFAULT NULL,
+  `user_name` varchar(255) COLLATE utf8_bin DEFAULT NULL,
+  `consignee` varchar(255) COLLATE utf8_bin DEFAULT NULL,
+  PRIMARY KEY (`id`) USING BTREE,
+  KEY `idx_orders_archive_number` (`number`),
+  KEY `idx_orders_archive_order_time` (`order_time`,`id`),
+  KEY `idx_orders_archive_user_time` (`user_id`,`order_time`,`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin COMMENT='订单归档表，列与orders完全一致';
+
+-- ----------------------------
+-- Table structure for order_detail_archive
+-- ----------------------------
+DROP TABLE IF EXISTS `order_detail_archive`;
+CREATE TABLE `order_detail_archive` (
+  `id` bigint(20) NOT NULL COMMENT '主键',
+  `name` varchar(50) COLLATE utf8_bin DEFAULT NULL COMMENT '名字',
+  `image` varchar(100) COLLATE utf8_bin DEFAULT NULL COMMENT '图片',
+  `order_id` bigint(20) NOT NULL COMMENT '订单id',
+  `dish_id` bigint(20) DEFAULT NULL COMMENT '菜品id',
+  `setmeal_id` bigint(20) DEFAULT NULL COMMENT '套餐id',
+  `dish_flavor` varchar(50) COLLATE utf8_bin DEFAULT NULL COMMENT '口味',
+  `number` int(11) NOT NULL DEFAULT '1' COMMENT '数量',
+  `amount` decimal(10,2) NOT NULL COMMENT '金额',
+  PRIMARY KEY (`id`) USING BTREE,
+  KEY `idx_order_detail_archive_order_id` (`order_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin COMMENT='订单明细归档表，列与order_detail完全一致';
+
+-- ----------------------------
+-- Table structure for sales_daily_item
+-- ----------------------------
+DROP TABLE IF EXISTS `sales_daily_item`;
+CREATE TABLE `sales_daily_item` (
+  `stat_date` date NOT NULL COMMENT '下单日期',
+  `item_type` tinyint(4) NOT NULL COMMENT '1菜品，2套餐',
+  `item_id` bigint(20) NOT NULL COMMENT '菜品id或套餐id',
+  `category_id` bigint(20) DEFAULT NULL COMMENT '分类id',
+  `name` varchar(64) COLLATE utf8_bin DEFAULT NULL COMMENT '名称',
+  `quantity` bigint(20) NOT NULL DEFAULT '0' COMMENT '份数',
+  `amount` decimal(14,2) NOT NULL DEFAULT '0.00' COMMENT '金额',
+  PRIMARY KEY (`stat_date`,`item_type`,`item_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin COMMENT='按天、菜品/套餐汇总的销售数据，不含已取消的订单';
+
+-- ----------------------------
+-- Table structure for sales_hourly
+-- ----------------------------
+DROP TABLE IF EXISTS `sales_hourly`;
+CREATE TABLE `sales_hourly` (
+  `stat_hour` datetime NOT NULL COMMENT '下单时间所在的整点',
+  `order_count` bigint(20) NOT NULL DEFAULT '0' COMMENT '订单数',
+  `amount` decimal(14,2) NOT NULL DEFAULT '0.00' COMMENT '营业额',
+  PRIMARY KEY (`stat_hour`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin COMMENT='按小时汇总的销售数据，不含已取消的订单';
+
 -- ----------------------------
 -- Table structure for setmeal
 -- ----------------------------
@@ -302,7 +383,8 @@ CREATE TABLE `setmeal` (
   `update_user` bigint(20) NOT NULL COMMENT '修改人',
   `is_deleted` int(11) NOT NULL DEFAULT '0' COMMENT '是否删除',
   PRIMARY KEY (`id`) USING BTREE,
-  UNIQUE KEY `idx_setmeal_name` (`name`)
+  UNIQUE KEY `idx_setmeal_name` (`name`),
+  FULLTEXT KEY `ft_setmeal_name` (`name`) WITH PARSER ngram
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin COMMENT='套餐';
 
 -- ----------------------------
@@ -316,8 +398,8 @@ INSERT INTO `setmeal` VALUES ('1415580119015145474', '1413386191767674881', '儿
 DROP TABLE IF EXISTS `setmeal_dish`;
 CREATE TABLE `setmeal_dish` (
   `id` bigint(20) NOT NULL COMMENT '主键',
-  `setmeal_id` varchar(32) COLLATE utf8_bin NOT NULL COMMENT '套餐id ',
-  `dish_id` varchar(32) COLLATE utf8_bin NOT NULL COMMENT '菜品id',
+  `setmeal_id` bigint(20) NOT NULL COMMENT '套餐id ',
+  `dish_id` bigint(20) NOT NULL COMMENT '菜品id',
   `name` varchar(32) COLLATE utf8_bin DEFAULT NULL COMMENT '菜品名称 （冗余字段）',
   `price` decimal(10,2) DEFAULT NULL COMMENT '菜品原价（冗余字段）',
   `copies` int(11) NOT NULL COMMENT '份数',
@@ -327,7 +409,9 @@ CREATE TABLE `setmeal_dish` (
   `create_user` bigint(20) NOT NULL COMMENT '创建人',
   `update_user` bigint(20) NOT NULL COMMENT '修改人',
   `is_deleted` int(11) NOT NULL DEFAULT '0' COMMENT '是否删除',
-  PRIMARY KEY (`id`) USING BTREE
+  PRIMARY KEY (`id`) USING BTREE,
+  KEY `idx_setmeal_dish_setmeal_id` (`setmeal_id`),
+  KEY `idx_setmeal_dish_dish_id` (`dish_id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin COMMENT='套餐菜品关系';
 
 -- ----------------------------
@@ -352,7 +436,11 @@ CREATE TABLE `shopping_cart` (
   `number` int(11) NOT NULL DEFAULT '1' COMMENT '数量',
   `amount` decimal(10,2) NOT NULL COMMENT '金额',
   `create_time` datetime DEFAULT NULL COMMENT '创建时间',
-  PRIMARY KEY (`id`) USING BTREE
+  `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '最后修改时间，由数据库维护，用于清理长时间未修改的购物车',
+  `item_key` varchar(32) COLLATE utf8_bin GENERATED ALWAYS AS (IF(`dish_id` IS NOT NULL, CONCAT('dish:', `dish_id`), CONCAT('setmeal:', `setmeal_id`))) STORED COMMENT '商品标识，同一用户的同一菜品(不区分口味)或套餐只有一条数据',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE KEY `uk_shopping_cart_user_item` (`user_id`,`item_key`),
+  KEY `idx_shopping_cart_update_time` (`update_time`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin COMMENT='购物车';
 
 -- ----------------------------
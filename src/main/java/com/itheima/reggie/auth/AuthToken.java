@@ -0,0 +1,22 @@
+package com.itheima.reggie.auth;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * token中保存的登录信息
+ */
+@Data
+@AllArgsConstructor
+public class AuthToken {
+    private LoginType type;
+    private Long id;
+    /**
+     * 过期时间(秒级时间戳)
+     */
+    private long expiresAt;
+    /**
+     * token的唯一标识，注销时加入禁用列表
+     */
+    private String tokenId;
+}
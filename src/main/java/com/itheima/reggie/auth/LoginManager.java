@@ -0,0 +1,29 @@
+package com.itheima.reggie.auth;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 保存与识别登录状态的方式，通过project.auth.mode选择：
+ * session保存在Servlet容器的Session中(多节点部署时需要会话保持)，token使用签名的token，任意节点都可以直接校验
+ */
+public interface LoginManager {
+
+    /**
+     * 识别请求的登录身份，管理端员工优先
+     *
+     * @param response 需要时用于续期
+     * @return 未登录时返回null
+     */
+    LoginPrincipal authenticate(HttpServletRequest request, HttpServletResponse response);
+
+    /**
+     * 登录成功后保存登录状态
+     */
+    void login(LoginType type, Long id, HttpServletRequest request, HttpServletResponse response);
+
+    /**
+     * 退出登录，只影响指定身份的登录状态
+     */
+    void logout(LoginType type, HttpServletRequest request, HttpServletResponse response);
+}
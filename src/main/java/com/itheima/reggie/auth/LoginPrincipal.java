@@ -0,0 +1,14 @@
+package com.itheima.reggie.auth;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 当前请求的登录身份
+ */
+@Data
+@AllArgsConstructor
+public class LoginPrincipal {
+    private LoginType type;
+    private Long id;
+}
@@ -0,0 +1,41 @@
+package com.itheima.reggie.auth;
+
+/**
+ * 登录的身份：管理端员工或用户端用户
+ */
+public enum LoginType {
+    EMPLOYEE("employee", "e"),
+    USER("user", "u");
+
+    /**
+     * Session属性名，同时也是登录检查通过后保存id的request属性名
+     */
+    private final String attributeName;
+    /**
+     * 在token中的表示
+     */
+    private final String code;
+
+    LoginType(String attributeName, String code) {
+        this.attributeName = attributeName;
+        this.code = code;
+    }
+
+    public String getAttributeName() {
+        return attributeName;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * @return code不存在时返回null
+     */
+    public static LoginType ofCode(String code) {
+        for (LoginType type : values()) {
+            if (type.code.equals(code)) return type;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,39 @@
+package com.itheima.reggie.auth;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+/**
+ * 登录的员工id、用户id分别保存在Session的employee、user属性中
+ */
+@Component
+@ConditionalOnProperty(name = "project.auth.mode", havingValue = "session", matchIfMissing = true)
+public class SessionLoginManager implements LoginManager {
+
+    @Override
+    public LoginPrincipal authenticate(HttpServletRequest request, HttpServletResponse response) {
+        // 未登录的请求不创建Session
+        HttpSession session = request.getSession(false);
+        if (session == null) return null;
+        for (LoginType type : LoginType.values()) {
+            Object id = session.getAttribute(type.getAttributeName());
+            if (id != null) return new LoginPrincipal(type, (Long) id);
+        }
+        return null;
+    }
+
+    @Override
+    public void login(LoginType type, Long id, HttpServletRequest request, HttpServletResponse response) {
+        request.getSession().setAttribute(type.getAttributeName(), id);
+    }
+
+    @Override
+    public void logout(LoginType type, HttpServletRequest request, HttpServletResponse response) {
+        HttpSession session = request.getSession(false);
+        if (session != null) session.removeAttribute(type.getAttributeName());
+    }
+}
@@ -0,0 +1,89 @@
+package com.itheima.reggie.auth;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * token的编码与校验：base64url(类型|id|过期时间|token id).base64url(HMAC-SHA256签名)
+ * <p>
+ * 校验只需要计算一次签名，不访问Session或任何存储；签名密钥由所有节点共享
+ */
+public class TokenCodec {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_SECRET_LENGTH = 32;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    /**
+     * Mac不是线程安全的，每个线程复用一个实例
+     */
+    private final ThreadLocal<Mac> macs;
+    private final SecureRandom random = new SecureRandom();
+
+    public TokenCodec(String secret) {
+        if (secret == null || secret.length() < MIN_SECRET_LENGTH) {
+            throw new IllegalStateException("project.auth.token.secret至少需要" + MIN_SECRET_LENGTH + "个字符");
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * 生成新的token，token id随机生成
+     */
+    public AuthToken newToken(LoginType type, Long id, long expiresAt) {
+        byte[] tokenId = new byte[12];
+        random.nextBytes(tokenId);
+        return new AuthToken(type, id, expiresAt, ENCODER.encodeToString(tokenId));
+    }
+
+    public String encode(AuthToken token) {
+        String payload = token.getType().getCode() + "|" + token.getId() + "|" + token.getExpiresAt() + "|" + token.getTokenId();
+        String encodedPayload = ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        return encodedPayload + "." + ENCODER.encodeToString(sign(encodedPayload));
+    }
+
+    /**
+     * 校验签名并解析，不检查是否过期
+     *
+     * @return 格式错误或签名不正确时返回null
+     */
+    public AuthToken decode(String token) {
+        if (token == null) return null;
+        int dot = token.indexOf('.');
+        if (dot <= 0) return null;
+        String encodedPayload = token.substring(0, dot);
+        try {
+            byte[] signature = DECODER.decode(token.substring(dot + 1));
+            // 固定时间比较，避免通过响应时间猜测签名
+            if (!MessageDigest.isEqual(signature, sign(encodedPayload))) return null;
+            String[] fields = new String(DECODER.decode(encodedPayload), StandardCharsets.UTF_8).split("\\|");
+            if (fields.length != 4) return null;
+            LoginType type = LoginType.ofCode(fields[0]);
+            if (type == null) return null;
+            return new AuthToken(type, Long.valueOf(fields[1]), Long.parseLong(fields[2]), fields[3]);
+        } catch (IllegalArgumentException e) {
+            // base64或数字格式错误
+            return null;
+        }
+    }
+
+    private byte[] sign(String encodedPayload) {
+        return macs.get().doFinal(encodedPayload.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,102 @@
+package com.itheima.reggie.auth;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 已注销但尚未过期的token
+ * <p>
+ * Redis中的reggie:auth:denied(zset，score为token的过期时间)保存完整的列表，每个节点在内存中保存一份，
+ * 校验token时只查询内存。注销时通过Redis发布通知，所有节点立即加入各自的列表；另外定时从Redis重新加载，
+ * 作为通知丢失时的兜底。过期的token本身就无法通过校验，因此列表中只保留未过期的，数量很少
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "project.auth.mode", havingValue = "token")
+public class TokenDenyList implements MessageListener {
+
+    /**
+     * 注销通知，消息内容为 token id:过期时间
+     */
+    public static final String CHANNEL = "reggie:auth:revoked";
+    private static final String KEY = "reggie:auth:denied";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+
+    /**
+     * token id -> 过期时间(秒级时间戳)
+     */
+    private final Map<String, Long> denied = new ConcurrentHashMap<>();
+
+    public TokenDenyList(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer redisMessageListenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisMessageListenerContainer = redisMessageListenerContainer;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+        reload();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf(':');
+        if (separator <= 0) return;
+        try {
+            denied.put(body.substring(0, separator), Long.parseLong(body.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            log.warn("无法解析token注销通知:{}", body);
+        }
+    }
+
+    public boolean isDenied(String tokenId) {
+        return denied.containsKey(tokenId);
+    }
+
+    /**
+     * 禁用token，所有节点立即生效
+     */
+    public void deny(AuthToken token) {
+        String tokenId = token.getTokenId();
+        denied.put(tokenId, token.getExpiresAt());
+        // 先写入Redis再发布通知，收不到通知的节点也能在下次加载时读到
+        stringRedisTemplate.opsForZSet().add(KEY, tokenId, token.getExpiresAt());
+        stringRedisTemplate.convertAndSend(CHANNEL, tokenId + ":" + token.getExpiresAt());
+    }
+
+    /**
+     * 从Redis重新加载，并删除已经过期的token
+     */
+    @Scheduled(fixedDelayString = "${project.auth.token.deny-list-refresh-millis}")
+    public void reload() {
+        long now = System.currentTimeMillis() / 1000;
+        try {
+            stringRedisTemplate.opsForZSet().removeRangeByScore(KEY, 0, now);
+            Set<ZSetOperations.TypedTuple<String>> tokens = stringRedisTemplate.opsForZSet().rangeByScoreWithScores(KEY, now, Double.MAX_VALUE);
+            if (tokens != null) {
+                tokens.forEach(token -> denied.put(token.getValue(), token.getScore().longValue()));
+            }
+        } catch (Exception e) {
+            log.error("加载token禁用列表失败，继续使用内存中的列表", e);
+        }
+        // 只删除已经过期的，加载期间收到的通知不会丢失
+        denied.values().removeIf(expiresAt -> expiresAt <= now);
+    }
+}
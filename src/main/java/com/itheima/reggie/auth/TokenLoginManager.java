@@ -0,0 +1,107 @@
+package com.itheima.reggie.auth;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 登录状态保存在签名的token中，员工与用户的token分别保存在reggie_employee_token、reggie_user_token两个Cookie中(HttpOnly)
+ * <p>
+ * 校验token只需要计算签名并查询内存中的禁用列表，不依赖Session，请求可以发送到任意节点。
+ * token的剩余有效期不足一半时，在响应中下发新的token，持续使用的用户不需要重新登录
+ */
+@Component
+@ConditionalOnProperty(name = "project.auth.mode", havingValue = "token")
+public class TokenLoginManager implements LoginManager {
+
+    private static final String COOKIE_PREFIX = "reggie_";
+    private static final String COOKIE_SUFFIX = "_token";
+
+    private final TokenCodec tokenCodec;
+    private final TokenDenyList tokenDenyList;
+    private final long ttlSeconds;
+    private final boolean secureCookie;
+
+    public TokenLoginManager(TokenDenyList tokenDenyList,
+                             @Value("${project.auth.token.secret}") String secret,
+                             @Value("${project.auth.token.ttl-minutes}") long ttlMinutes,
+                             @Value("${project.auth.token.secure-cookie}") boolean secureCookie) {
+        this.tokenCodec = new TokenCodec(secret);
+        this.tokenDenyList = tokenDenyList;
+        this.ttlSeconds = TimeUnit.MINUTES.toSeconds(ttlMinutes);
+        this.secureCookie = secureCookie;
+    }
+
+    @Override
+    public LoginPrincipal authenticate(HttpServletRequest request, HttpServletResponse response) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) return null;
+        for (LoginType type : LoginType.values()) {
+            AuthToken token = verify(findCookie(cookies, type));
+            // Cookie被调换时token中的身份与Cookie不一致，视为无效
+            if (token == null || token.getType() != type) continue;
+            if (token.getExpiresAt() - now() < ttlSeconds / 2) {
+                addCookie(response, type, tokenCodec.encode(tokenCodec.newToken(type, token.getId(), now() + ttlSeconds)), ttlSeconds);
+            }
+            return new LoginPrincipal(type, token.getId());
+        }
+        return null;
+    }
+
+    @Override
+    public void login(LoginType type, Long id, HttpServletRequest request, HttpServletResponse response) {
+        addCookie(response, type, tokenCodec.encode(tokenCodec.newToken(type, id, now() + ttlSeconds)), ttlSeconds);
+    }
+
+    @Override
+    public void logout(LoginType type, HttpServletRequest request, HttpServletResponse response) {
+        Cookie[] cookies = request.getCookies();
+        AuthToken token = cookies == null ? null : verify(findCookie(cookies, type));
+        if (token != null) tokenDenyList.deny(token);
+        addCookie(response, type, "", 0);
+    }
+
+    /**
+     * @return 签名不正确、已过期或已注销时返回null
+     */
+    private AuthToken verify(String value) {
+        AuthToken token = tokenCodec.decode(value);
+        if (token == null || token.getExpiresAt() <= now() || tokenDenyList.isDenied(token.getTokenId())) return null;
+        return token;
+    }
+
+    private static String findCookie(Cookie[] cookies, LoginType type) {
+        String name = cookieName(type);
+        for (Cookie cookie : cookies) {
+            if (name.equals(cookie.getName())) return cookie.getValue();
+        }
+        return null;
+    }
+
+    private void addCookie(HttpServletResponse response, LoginType type, String value, long maxAgeSeconds) {
+        ResponseCookie cookie = ResponseCookie.from(cookieName(type), value)
+                .path("/")
+                .httpOnly(true)
+                .secure(secureCookie)
+                .sameSite("Lax")
+                .maxAge(Duration.ofSeconds(maxAgeSeconds))
+                .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+
+    private static String cookieName(LoginType type) {
+        return COOKIE_PREFIX + type.getAttributeName() + COOKIE_SUFFIX;
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
@@ -0,0 +1,26 @@
+package com.itheima.reggie.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 缓存失效通知，通过Redis发布订阅在各个节点之间传递
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheEvictMessage {
+    /**
+     * 发送通知的节点id，节点收到自己发出的通知时直接忽略
+     */
+    private String sender;
+    /**
+     * 缓存名称
+     */
+    private String cacheName;
+    /**
+     * 需要删除的缓存key，为null时表示清空整个缓存
+     */
+    private String key;
+}
@@ -0,0 +1,83 @@
+package com.itheima.reggie.cache;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * 缓存重建租约：缓存未命中时，只有拿到租约的节点去查询数据库并写入Redis，其他节点等待Redis中出现新值
+ * <p>
+ * 租约带有过期时间，持有租约的节点宕机后，其他节点最多等待到租约过期
+ */
+public class CacheLoadLease {
+
+    private static final String LEASE_KEY_PREFIX = "reggie:cache:lease:";
+    /**
+     * 未启用租约时返回的令牌，释放时不需要访问Redis
+     */
+    private static final String NO_LEASE = "";
+    /**
+     * 只删除自己持有的租约，避免误删租约过期后被其他节点重新获取的租约
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean enabled;
+    private final Duration leaseTime;
+    private final long waitMillis;
+    private final long pollMillis;
+
+    /**
+     * @param stringRedisTemplate 用于读写租约
+     * @param enabled             是否启用，不启用时每个节点各自加载(单个节点内依然只有一个线程加载)
+     * @param leaseTime           租约的过期时间，应大于一次加载的耗时
+     * @param waitMillis          未拿到租约时最多等待的时间，超时后自行加载
+     * @param pollMillis          等待期间查询Redis的间隔
+     */
+    public CacheLoadLease(StringRedisTemplate stringRedisTemplate, boolean enabled,
+                          Duration leaseTime, long waitMillis, long pollMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = enabled;
+        this.leaseTime = leaseTime;
+        this.waitMillis = waitMillis;
+        this.pollMillis = pollMillis;
+    }
+
+    /**
+     * 尝试获取租约
+     *
+     * @return 租约令牌，用于释放租约；租约已被其他节点持有时返回null
+     */
+    public String tryAcquire(String cacheName, String key) {
+        if (!enabled) return NO_LEASE;
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = stringRedisTemplate.opsForValue().setIfAbsent(leaseKey(cacheName, key), token, leaseTime);
+        return Boolean.TRUE.equals(acquired) ? token : null;
+    }
+
+    /**
+     * 释放租约
+     */
+    public void release(String cacheName, String key, String token) {
+        if (!enabled || token == null) return;
+        stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(leaseKey(cacheName, key)), token);
+    }
+
+    public long getWaitMillis() {
+        return waitMillis;
+    }
+
+    public long getPollMillis() {
+        return pollMillis;
+    }
+
+    private static String leaseKey(String cacheName, String key) {
+        return LEASE_KEY_PREFIX + cacheName + ":" + key;
+    }
+}
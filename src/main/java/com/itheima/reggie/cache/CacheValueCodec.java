@@ -0,0 +1,17 @@
+package com.itheima.reggie.cache;
+
+/**
+ * Redis缓存值的编解码方式，由 {@link CompressingCacheValueSerializer} 在其基础上负责压缩与统计
+ */
+public interface CacheValueCodec {
+
+    /**
+     * 将缓存值编码为字节数组，value不会为null
+     */
+    byte[] encode(Object value) throws Exception;
+
+    /**
+     * 将字节数组解码为缓存值
+     */
+    Object decode(byte[] bytes) throws Exception;
+}
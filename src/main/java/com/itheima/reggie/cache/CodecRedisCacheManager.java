@@ -0,0 +1,37 @@
+package com.itheima.reggie.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+
+/**
+ * 为每个缓存创建独立的值序列化器，以便按缓存名称统计编码后的大小与编解码耗时
+ */
+public class CodecRedisCacheManager extends RedisCacheManager {
+
+    private final CacheValueCodec codec;
+    private final int compressThreshold;
+    private final MeterRegistry meterRegistry;
+
+    public CodecRedisCacheManager(RedisCacheWriter cacheWriter,
+                                  RedisCacheConfiguration defaultCacheConfiguration,
+                                  CacheValueCodec codec,
+                                  int compressThreshold,
+                                  MeterRegistry meterRegistry) {
+        super(cacheWriter, defaultCacheConfiguration);
+        this.codec = codec;
+        this.compressThreshold = compressThreshold;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected RedisCache createRedisCache(String name, RedisCacheConfiguration cacheConfig) {
+        CompressingCacheValueSerializer serializer = new CompressingCacheValueSerializer(name, codec, compressThreshold, meterRegistry);
+        RedisCacheConfiguration configuration = cacheConfig
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(serializer));
+        return super.createRedisCache(name, configuration);
+    }
+}
@@ -0,0 +1,150 @@
+package com.itheima.reggie.cache;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 一个缓存(cacheName)专用的值序列化器：使用 {@link CacheValueCodec} 编码，编码结果超过阈值时再进行GZIP压缩，
+ * 并按缓存名称统计编码后的大小与编解码耗时
+ * <p>
+ * 存储格式为 [魔数][格式标记][数据]，格式标记区分未压缩、GZIP压缩与空值；
+ * 无法识别的数据(例如切换编码方式前写入的旧数据)会被当作缓存未命中处理，随后被新数据覆盖
+ */
+@Slf4j
+public class CompressingCacheValueSerializer implements RedisSerializer<Object> {
+
+    private static final byte MAGIC = 'R';
+    private static final byte FORMAT_RAW = 0;
+    private static final byte FORMAT_GZIP = 1;
+    private static final byte FORMAT_NULL = 2;
+
+    private final String cacheName;
+    private final CacheValueCodec codec;
+    private final int compressThreshold;
+    private final Timer encodeTimer;
+    private final Timer decodeTimer;
+    private final DistributionSummary encodedSize;
+
+    /**
+     * @param cacheName         缓存名称，作为统计指标的标签
+     * @param codec             编解码方式
+     * @param compressThreshold 编码后的字节数达到该值时进行压缩
+     * @param meterRegistry     统计指标注册中心
+     */
+    public CompressingCacheValueSerializer(String cacheName, CacheValueCodec codec, int compressThreshold, MeterRegistry meterRegistry) {
+        this.cacheName = cacheName;
+        this.codec = codec;
+        this.compressThreshold = compressThreshold;
+        this.encodeTimer = Timer.builder("reggie.cache.codec.encode")
+                .description("缓存值编码耗时")
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+        this.decodeTimer = Timer.builder("reggie.cache.codec.decode")
+                .description("缓存值解码耗时")
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+        this.encodedSize = DistributionSummary.builder("reggie.cache.codec.encoded.size")
+                .description("缓存值编码(及压缩)后的大小")
+                .baseUnit("bytes")
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        long start = System.nanoTime();
+        try {
+            byte[] result;
+            // RedisCache会将null值转换为NullValue后再序列化
+            if (value == null || value instanceof NullValue) {
+                result = new byte[]{MAGIC, FORMAT_NULL};
+            } else {
+                byte[] encoded = codec.encode(value);
+                result = encoded.length >= compressThreshold
+                        ? withHeader(FORMAT_GZIP, gzip(encoded))
+                        : withHeader(FORMAT_RAW, encoded);
+            }
+            encodedSize.record(result.length);
+            return result;
+        } catch (Exception e) {
+            throw new SerializationException("缓存[" + cacheName + "]的值编码失败", e);
+        } finally {
+            encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null) return null;
+        long start = System.nanoTime();
+        try {
+            if (bytes.length < 2 || bytes[0] != MAGIC) {
+                log.warn("缓存[{}]中存在无法识别的数据，按未命中处理", cacheName);
+                return null;
+            }
+            switch (bytes[1]) {
+                case FORMAT_NULL:
+                    return NullValue.INSTANCE;
+                case FORMAT_RAW:
+                    return codec.decode(payload(bytes));
+                case FORMAT_GZIP:
+                    return codec.decode(gunzip(payload(bytes)));
+                default:
+                    log.warn("缓存[{}]中存在无法识别的数据格式:{}，按未命中处理", cacheName, bytes[1]);
+                    return null;
+            }
+        } catch (Exception e) {
+            log.warn("缓存[{}]的值解码失败，按未命中处理", cacheName, e);
+            return null;
+        } finally {
+            decodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static byte[] withHeader(byte format, byte[] data) {
+        byte[] result = new byte[data.length + 2];
+        result[0] = MAGIC;
+        result[1] = format;
+        System.arraycopy(data, 0, result, 2, data.length);
+        return result;
+    }
+
+    private static byte[] payload(byte[] bytes) {
+        byte[] data = new byte[bytes.length - 2];
+        System.arraycopy(bytes, 2, data, 0, data.length);
+        return data;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length / 2);
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+            gzipOutputStream.write(data);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length * 4);
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, len);
+            }
+        }
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,50 @@
+package com.itheima.reggie.cache;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * 基于JSON的编解码方式，比JDK序列化更紧凑，解码也更快
+ * <p>
+ * 缓存值中带有泛型(如 R&lt;List&lt;DishDto&gt;&gt;)，因此需要在JSON中记录类型信息才能还原为原来的对象；
+ * 只允许还原本项目及JDK中的常用类型，避免Redis中的数据被篡改后反序列化出任意类型
+ * <p>
+ * 注意不能使用 {@link com.itheima.reggie.common.JacksonObjectMapper}：它为前端将Long转为了字符串，
+ * 也没有记录类型信息
+ */
+public class JacksonCacheValueCodec implements CacheValueCodec {
+
+    private final ObjectMapper objectMapper;
+
+    public JacksonCacheValueCodec() {
+        BasicPolymorphicTypeValidator typeValidator = BasicPolymorphicTypeValidator.builder()
+                .allowIfSubType("com.itheima.reggie.")
+                .allowIfSubType("java.util.")
+                .allowIfSubType("java.lang.")
+                .allowIfSubType("java.math.")
+                .allowIfSubType("java.time.")
+                .allowIfSubTypeIsArray()
+                .build();
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                // EVERYTHING: Long等final类型在Object类型的属性中也能还原为原来的类型
+                .activateDefaultTyping(typeValidator, ObjectMapper.DefaultTyping.EVERYTHING, JsonTypeInfo.As.PROPERTY);
+    }
+
+    @Override
+    public byte[] encode(Object value) throws Exception {
+        return objectMapper.writeValueAsBytes(value);
+    }
+
+    @Override
+    public Object decode(byte[] bytes) throws Exception {
+        return objectMapper.readValue(bytes, Object.class);
+    }
+}
@@ -0,0 +1,21 @@
+package com.itheima.reggie.cache;
+
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+/**
+ * 基于JDK序列化的编解码方式，可以处理任何实现了Serializable的对象，但体积较大
+ */
+public class JdkCacheValueCodec implements CacheValueCodec {
+
+    private final JdkSerializationRedisSerializer serializer = new JdkSerializationRedisSerializer();
+
+    @Override
+    public byte[] encode(Object value) {
+        return serializer.serialize(value);
+    }
+
+    @Override
+    public Object decode(byte[] bytes) {
+        return serializer.deserialize(bytes);
+    }
+}
@@ -0,0 +1,51 @@
+package com.itheima.reggie.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * 按分类精确删除用户端菜单缓存
+ * <p>
+ * 受影响的分类需要在修改前后分别确定(例如菜品从一个分类移动到另一个分类时，新旧两个分类的缓存都需要删除)，
+ * 无法只用 @CacheEvict 的一个key表达，因此由Controller在修改完成后显式调用
+ */
+@Component
+public class MenuCacheInvalidator {
+
+    public static final String DISH_CACHE = "dishListByCategory";
+    public static final String SETMEAL_CACHE = "setmealByCategory";
+
+    private final CacheManager cacheManager;
+
+    public MenuCacheInvalidator(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * 删除指定分类下的菜品列表缓存
+     *
+     * @param categoryIds 分类id集合
+     */
+    public void evictDishLists(Collection<Long> categoryIds) {
+        evict(DISH_CACHE, categoryIds);
+    }
+
+    /**
+     * 删除指定分类下的套餐列表缓存
+     *
+     * @param categoryIds 分类id集合
+     */
+    public void evictSetmealLists(Collection<Long> categoryIds) {
+        evict(SETMEAL_CACHE, categoryIds);
+    }
+
+    private void evict(String cacheName, Collection<Long> categoryIds) {
+        Cache cache = Objects.requireNonNull(cacheManager.getCache(cacheName));
+        // 二级缓存会将每个key的删除广播给其他节点
+        categoryIds.stream().filter(Objects::nonNull).distinct().forEach(cache::evict);
+    }
+}
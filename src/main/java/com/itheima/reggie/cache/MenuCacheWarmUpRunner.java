@@ -0,0 +1,128 @@
+package com.itheima.reggie.cache;
+
+import com.itheima.reggie.controller.DishController;
+import com.itheima.reggie.controller.SetmealController;
+import com.itheima.reggie.entity.Category;
+import com.itheima.reggie.entity.Dish;
+import com.itheima.reggie.entity.Setmeal;
+import com.itheima.reggie.service.CategoryService;
+import com.itheima.reggie.service.MenuSnapshotService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 启动时预热用户端菜单缓存
+ * <p>
+ * 新部署的节点本地缓存为空，Redis中的缓存也可能刚被清除，如果直接接收流量，最初的请求都会落到mysql上。
+ * 这里在启动完成前按分类加载所有菜品列表、套餐列表以及菜单快照。
+ * SpringBoot在所有ApplicationRunner执行完成后才会将就绪状态(/actuator/health/readiness)切换为ACCEPTING_TRAFFIC，
+ * 因此负载均衡会在预热完成后才把流量转发到本节点
+ * <p>
+ * 通过调用Controller的代理对象加载，保证缓存的key与值和正常请求完全一致
+ */
+@Slf4j
+@Component
+public class MenuCacheWarmUpRunner implements ApplicationRunner {
+
+    private final CategoryService categoryService;
+    private final DishController dishController;
+    private final SetmealController setmealController;
+    private final MenuSnapshotService menuSnapshotService;
+
+    @Value("${project.warm-up.enabled}")
+    private boolean enabled;
+    @Value("${project.warm-up.parallelism}")
+    private int parallelism;
+    @Value("${project.warm-up.timeout-seconds}")
+    private long timeoutSeconds;
+
+    public MenuCacheWarmUpRunner(CategoryService categoryService, DishController dishController,
+                                 SetmealController setmealController, MenuSnapshotService menuSnapshotService) {
+        this.categoryService = categoryService;
+        this.dishController = dishController;
+        this.setmealController = setmealController;
+        this.menuSnapshotService = menuSnapshotService;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws InterruptedException {
+        if (!enabled) {
+            log.info("菜单缓存预热已关闭");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<Category> categories;
+        try {
+            categories = categoryService.list();
+        } catch (Exception e) {
+            // 预热只是优化，不能因此导致节点无法启动
+            log.warn("查询分类失败，跳过菜单缓存预热", e);
+            return;
+        }
+        AtomicInteger failures = new AtomicInteger();
+        // 并发数有上限，避免预热本身把mysql压垮
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "menu-warm-up-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Category category : categories) {
+                futures.add(executor.submit(() -> warmUp(category, failures)));
+            }
+            futures.add(executor.submit(() -> {
+                try {
+                    menuSnapshotService.getSnapshot();
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    log.warn("预热菜单快照失败", e);
+                }
+            }));
+            executor.shutdown();
+            if (!executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
+                futures.forEach(future -> future.cancel(true));
+                log.warn("菜单缓存预热超过{}秒未完成，剩余部分将在请求时加载", timeoutSeconds);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("菜单缓存预热完成，分类数:{}，失败数:{}，耗时:{}ms",
+                categories.size(), failures.get(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 预热一个分类：用户端按分类查询起售中的菜品或套餐
+     */
+    private void warmUp(Category category, AtomicInteger failures) {
+        try {
+            if (Integer.valueOf(1).equals(category.getType())) {
+                Dish condition = new Dish();
+                condition.setCategoryId(category.getId());
+                condition.setStatus(1);
+                dishController.list(condition);
+            } else {
+                Setmeal condition = new Setmeal();
+                condition.setCategoryId(category.getId());
+                condition.setStatus(1);
+                setmealController.list(condition);
+            }
+        } catch (Exception e) {
+            // 预热失败不影响启动，该分类会在第一次请求时加载
+            failures.incrementAndGet();
+            log.warn("预热分类[{}]的缓存失败", category.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.itheima.reggie.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 二级缓存：一级为进程内的Caffeine缓存，二级为Redis缓存
+ * <p>
+ * 读取时先查本地缓存，未命中再查Redis，Redis命中后回填本地缓存；
+ * 写入、删除时同时操作两级缓存，并通过Redis发布订阅通知其他节点删除各自的本地缓存
+ * <p>
+ * 通过 {@link #get(Object, Callable)} 读取(即 @Cacheable(sync = true))时：
+ * <ul>
+ *     <li>同一个key在本节点内只有一个线程执行加载，其他线程等待其结果；加载(包括等待租约)不在Caffeine的锁内进行，
+ *     不会阻塞其他key的读写，加载完成后才写入本地缓存</li>
+ *     <li>Redis也未命中时，通过 {@link CacheLoadLease} 保证只有一个节点查询数据库</li>
+ *     <li>本地缓存写入超过刷新时间后，先返回旧值，同时在后台刷新</li>
+ * </ul>
+ */
+@Slf4j
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+    private final Cache redisCache;
+    private final com.github.benmanes.caffeine.cache.Cache<String, LocalEntry> localCache;
+    private final TwoLevelCacheManager cacheManager;
+    /**
+     * 正在后台刷新的key，保证同一个key同时只有一个刷新任务
+     */
+    private final Set<String> refreshingKeys = ConcurrentHashMap.newKeySet();
+    /**
+     * 正在加载的key及其结果，同一个key的其他线程等待同一个结果；加载期间key被写入或删除时移除，加载结果不再写入本地缓存
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<LocalEntry>> loadingKeys = new ConcurrentHashMap<>();
+
+    public TwoLevelCache(String name,
+                         Cache redisCache,
+                         com.github.benmanes.caffeine.cache.Cache<String, LocalEntry> localCache,
+                         TwoLevelCacheManager cacheManager) {
+        super(true);
+        this.name = name;
+        this.redisCache = redisCache;
+        this.localCache = localCache;
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return localCache;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        String localKey = toLocalKey(key);
+        LocalEntry entry = localCache.getIfPresent(localKey);
+        if (entry != null) return entry.value;
+        ValueWrapper wrapper = redisCache.get(key);
+        if (wrapper == null) return null;
+        Object value = toStoreValue(wrapper.get());
+        localCache.put(localKey, new LocalEntry(value));
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = toLocalKey(key);
+        LocalEntry entry = localCache.getIfPresent(localKey);
+        if (entry == null) entry = loadOnce(key, localKey, valueLoader);
+        if (entry.isOlderThan(cacheManager.getLocalRefreshAfterNanos())) {
+            refreshAsync(key, localKey, entry, valueLoader);
+        }
+        return (T) fromStoreValue(entry.value);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        redisCache.put(key, value);
+        String localKey = toLocalKey(key);
+        loadingKeys.remove(localKey);
+        localCache.put(localKey, new LocalEntry(toStoreValue(value)));
+        // 其他节点的本地缓存中可能还保存着旧值，需要通知其删除
+        cacheManager.publishEvict(name, localKey);
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+        String localKey = toLocalKey(key);
+        loadingKeys.remove(localKey);
+        localCache.invalidate(localKey);
+        cacheManager.publishEvict(name, localKey);
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        loadingKeys.clear();
+        localCache.invalidateAll();
+        cacheManager.publishEvict(name, null);
+    }
+
+    /**
+     * 仅删除本节点的本地缓存，由其他节点的失效通知触发
+     */
+    void evictLocal(String localKey) {
+        loadingKeys.remove(localKey);
+        localCache.invalidate(localKey);
+    }
+
+    /**
+     * 仅清空本节点的本地缓存，由其他节点的失效通知触发
+     */
+    void clearLocal() {
+        loadingKeys.clear();
+        localCache.invalidateAll();
+    }
+
+    /**
+     * 本节点内同一个key只由第一个线程加载，其他线程等待其结果
+     */
+    private LocalEntry loadOnce(Object key, String localKey, Callable<?> valueLoader) {
+        CompletableFuture<LocalEntry> future = new CompletableFuture<>();
+        CompletableFuture<LocalEntry> loading = loadingKeys.putIfAbsent(localKey, future);
+        if (loading != null) {
+            try {
+                return loading.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            LocalEntry entry = localCache.getIfPresent(localKey);
+            if (entry == null) {
+                LocalEntry loaded = new LocalEntry(load(key, localKey, valueLoader));
+                // 加载期间key被写入或删除时(loadingKeys中已不是本次加载)不写入，避免用旧值覆盖
+                localCache.asMap().compute(localKey, (k, current) -> loadingKeys.get(k) == future ? loaded : current);
+                entry = loaded;
+            }
+            future.complete(entry);
+            return entry;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingKeys.remove(localKey, future);
+        }
+    }
+
+    /**
+     * 本地缓存未命中时的加载过程：先查Redis，未命中再获取租约后执行valueLoader，并将结果写入Redis
+     *
+     * @return 可以直接保存到本地缓存的值
+     */
+    private Object load(Object key, String localKey, Callable<?> valueLoader) {
+        ValueWrapper wrapper = redisCache.get(key);
+        if (wrapper != null) return toStoreValue(wrapper.get());
+
+        CacheLoadLease lease = cacheManager.getLoadLease();
+        String token = lease.tryAcquire(name, localKey);
+        if (token == null) {
+            // 其他节点正在重建，等待其写入Redis；等待超时则自行加载
+            wrapper = waitForRedis(key, lease);
+            if (wrapper != null) return toStoreValue(wrapper.get());
+            log.warn("等待缓存[{}:{}]重建超时，由本节点加载", name, localKey);
+        }
+        try {
+            Object loaded;
+            try {
+                loaded = valueLoader.call();
+            } catch (Exception e) {
+                throw new ValueRetrievalException(key, valueLoader, e);
+            }
+            redisCache.put(key, loaded);
+            return toStoreValue(loaded);
+        } finally {
+            lease.release(name, localKey, token);
+        }
+    }
+
+    private ValueWrapper waitForRedis(Object key, CacheLoadLease lease) {
+        long deadline = System.currentTimeMillis() + lease.getWaitMillis();
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(lease.getPollMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            ValueWrapper wrapper = redisCache.get(key);
+            if (wrapper != null) return wrapper;
+        }
+        return null;
+    }
+
+    /**
+     * 在后台刷新本地缓存，刷新期间的请求继续使用旧值
+     */
+    private void refreshAsync(Object key, String localKey, LocalEntry staleEntry, Callable<?> valueLoader) {
+        if (!refreshingKeys.add(localKey)) return;
+        try {
+            cacheManager.getRefreshExecutor().execute(() -> {
+                try {
+                    LocalEntry freshEntry = new LocalEntry(load(key, localKey, valueLoader));
+                    // 只替换刷新前的那个值：刷新期间缓存被删除或被写入新值时，不能用刷新结果覆盖
+                    localCache.asMap().replace(localKey, staleEntry, freshEntry);
+                } catch (Exception e) {
+                    log.warn("后台刷新缓存[{}:{}]失败，继续使用旧值", name, localKey, e);
+                } finally {
+                    refreshingKeys.remove(localKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 刷新任务已满，下一次读取时再尝试
+            refreshingKeys.remove(localKey);
+        }
+    }
+
+    /**
+     * Redis缓存的key最终都会被转换为字符串，本地缓存也统一使用字符串作为key，
+     * 这样其他节点通过消息传递过来的key可以直接用于删除本地缓存
+     */
+    private String toLocalKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    /**
+     * 本地缓存中保存的值，记录写入时间用于判断是否需要后台刷新
+     */
+    static final class LocalEntry {
+        private final Object value;
+        private final long loadedAt = System.nanoTime();
+
+        LocalEntry(Object value) {
+            this.value = value;
+        }
+
+        boolean isOlderThan(long nanos) {
+            return nanos > 0 && System.nanoTime() - loadedAt > nanos;
+        }
+    }
+}
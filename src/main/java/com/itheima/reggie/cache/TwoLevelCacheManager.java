@@ -0,0 +1,142 @@
+package com.itheima.reggie.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 二级缓存管理器，在RedisCacheManager的基础上为每个缓存增加一层有容量上限的本地缓存
+ * <p>
+ * 同时作为Redis消息监听器，接收其他节点发出的缓存失效通知，删除本节点对应的本地缓存，
+ * 保证Controller中的 @CacheEvict 在集群环境下依然有效
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager, MessageListener, DisposableBean {
+
+    public static final String EVICT_CHANNEL = "reggie:cache:evict";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ConcurrentMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    private final RedisCacheManager redisCacheManager;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long localMaximumSize;
+    private final Duration localExpire;
+    private final long localRefreshAfterNanos;
+    private final CacheLoadLease loadLease;
+    private final ExecutorService refreshExecutor;
+
+    /**
+     * @param redisCacheManager   二级缓存
+     * @param stringRedisTemplate 用于发布缓存失效通知
+     * @param localMaximumSize    每个本地缓存最多保存的条目数，超出后按使用频率淘汰
+     * @param localExpire         本地缓存的过期时间，作为失效通知丢失时的兜底
+     * @param localRefreshAfter   本地缓存写入超过该时间后，读取时返回旧值并在后台刷新，为0时不启用
+     * @param loadLease           缓存重建租约
+     */
+    public TwoLevelCacheManager(RedisCacheManager redisCacheManager,
+                                StringRedisTemplate stringRedisTemplate,
+                                long localMaximumSize,
+                                Duration localExpire,
+                                Duration localRefreshAfter,
+                                CacheLoadLease loadLease) {
+        this.redisCacheManager = redisCacheManager;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.localMaximumSize = localMaximumSize;
+        this.localExpire = localExpire;
+        this.localRefreshAfterNanos = localRefreshAfter.toNanos();
+        this.loadLease = loadLease;
+        // 刷新任务很少且可以丢弃(下一次读取时会重新提交)，使用小的有界线程池
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.refreshExecutor = new ThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(100),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "cache-refresh-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    private TwoLevelCache createCache(String name) {
+        com.github.benmanes.caffeine.cache.Cache<String, TwoLevelCache.LocalEntry> localCache = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localExpire)
+                .build();
+        return new TwoLevelCache(name, redisCacheManager.getCache(name), localCache, this);
+    }
+
+    long getLocalRefreshAfterNanos() {
+        return localRefreshAfterNanos;
+    }
+
+    CacheLoadLease getLoadLease() {
+        return loadLease;
+    }
+
+    ExecutorService getRefreshExecutor() {
+        return refreshExecutor;
+    }
+
+    /**
+     * 通知其他节点删除本地缓存
+     *
+     * @param cacheName 缓存名称
+     * @param key       缓存key，为null时表示清空整个缓存
+     */
+    void publishEvict(String cacheName, String key) {
+        CacheEvictMessage message = new CacheEvictMessage(nodeId, cacheName, key);
+        stringRedisTemplate.convertAndSend(EVICT_CHANNEL, JSON.toJSONString(message));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        CacheEvictMessage evictMessage = JSON.parseObject(
+                new String(message.getBody(), StandardCharsets.UTF_8), CacheEvictMessage.class);
+        if (nodeId.equals(evictMessage.getSender())) return;
+        // 本节点还没有创建过该缓存，说明也没有需要删除的本地数据
+        TwoLevelCache cache = caches.get(evictMessage.getCacheName());
+        if (cache == null) return;
+        log.debug("收到缓存失效通知:{}", evictMessage);
+        if (evictMessage.getKey() == null) {
+            cache.clearLocal();
+        } else {
+            cache.evictLocal(evictMessage.getKey());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,143 @@
+package com.itheima.reggie.cart;
+
+import com.itheima.reggie.common.JobLease;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 清理被放弃的购物车：用户的购物车中所有商品超过指定天数没有修改时，删除该用户在shopping_cart表中的数据
+ * <p>
+ * shopping_cart表的update_time在每次修改时由数据库自动更新，并且有索引。按(update_time, id)的顺序分批查询，
+ * 每批记住最后一行的位置，下一批从该位置之后继续，不会重复扫描；每批按主键删除，只锁定这一批数据行，
+ * 批与批之间暂停一段时间，删除失败(如锁等待超时)时等待后重试，每次重试的等待时间加倍
+ * <p>
+ * 使用Redis保存购物车时，Redis中的购物车会在最后一次修改后自动过期，表中的数据只会在同步时更新，
+ * 因此超过相同天数未更新的数据对应的购物车在Redis中已经过期，由这里删除
+ * <p>
+ * 每个节点都会触发清理任务，通过 {@link JobLease} 保证同一时间只有一个节点执行
+ */
+@Slf4j
+@Component
+public class AbandonedCartSweeper {
+
+    /**
+     * 同一用户有任何商品在期限内修改过时，整个购物车都保留
+     */
+    private static final String SELECT_SQL = "SELECT s.id, s.update_time FROM shopping_cart s " +
+            "WHERE s.update_time < NOW() - INTERVAL :idleDays DAY %s " +
+            "AND NOT EXISTS (SELECT 1 FROM shopping_cart a WHERE a.user_id = s.user_id AND a.update_time >= NOW() - INTERVAL :idleDays DAY) " +
+            "ORDER BY s.update_time, s.id LIMIT :limit";
+    private static final String AFTER_CONDITION =
+            "AND (s.update_time > :lastTime OR (s.update_time = :lastTime AND s.id > :lastId))";
+
+    private static final String JOB_NAME = "cart-sweeper";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final JobLease jobLease;
+
+    @Value("${project.cart.sweeper.enabled}")
+    private boolean enabled;
+    @Value("${project.cart.sweeper.idle-days}")
+    private int idleDays;
+    @Value("${project.cart.sweeper.batch-size}")
+    private int batchSize;
+    @Value("${project.cart.sweeper.pause-millis}")
+    private long pauseMillis;
+    @Value("${project.cart.sweeper.max-retries}")
+    private int maxRetries;
+    @Value("${project.cart.sweeper.lease-minutes}")
+    private long leaseMinutes;
+
+    private final Counter purgedCounter;
+    private final Timer sweepTimer;
+
+    public AbandonedCartSweeper(NamedParameterJdbcTemplate jdbcTemplate, JobLease jobLease, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jobLease = jobLease;
+        this.purgedCounter = Counter.builder("reggie.cart.sweeper.purged")
+                .description("清理的购物车数据行数")
+                .register(meterRegistry);
+        this.sweepTimer = Timer.builder("reggie.cart.sweeper.duration")
+                .description("一次清理购物车的耗时")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(cron = "${project.cart.sweeper.cron}")
+    public void sweep() {
+        if (!enabled) return;
+        try {
+            jobLease.runExclusively(JOB_NAME, Duration.ofMinutes(leaseMinutes), this::doSweep);
+        } catch (Exception e) {
+            log.error("清理购物车失败", e);
+        }
+    }
+
+    private void doSweep() {
+        long start = System.nanoTime();
+        int purged = 0;
+        Timestamp lastTime = null;
+        Long lastId = null;
+        try {
+            while (true) {
+                MapSqlParameterSource params = new MapSqlParameterSource("idleDays", idleDays).addValue("limit", batchSize);
+                String sql = String.format(SELECT_SQL, lastId == null ? "" : AFTER_CONDITION);
+                if (lastId != null) params.addValue("lastTime", lastTime).addValue("lastId", lastId);
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql, params);
+                if (rows.isEmpty()) break;
+                Map<String, Object> last = rows.get(rows.size() - 1);
+                lastTime = (Timestamp) last.get("update_time");
+                lastId = ((Number) last.get("id")).longValue();
+
+                List<Long> ids = rows.stream().map(row -> ((Number) row.get("id")).longValue()).sorted().collect(Collectors.toList());
+                int deleted = deleteWithRetry(ids);
+                purged += deleted;
+                purgedCounter.increment(deleted);
+                if (rows.size() < batchSize) break;
+                Thread.sleep(pauseMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("清理购物车失败，下次执行时重新开始", e);
+        } finally {
+            sweepTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (purged > 0) {
+            log.info("本次清理超过{}天未修改的购物车数据{}条，耗时{}ms", idleDays, purged,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * 按主键顺序删除一批数据；删除时再次检查修改时间，查询之后又被修改过的数据不会被删除
+     */
+    private int deleteWithRetry(List<Long> ids) throws InterruptedException {
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", ids).addValue("idleDays", idleDays);
+        long backoff = Math.max(pauseMillis, 1);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return jdbcTemplate.update("DELETE FROM shopping_cart WHERE id IN (:ids) " +
+                        "AND update_time < NOW() - INTERVAL :idleDays DAY", params);
+            } catch (Exception e) {
+                if (attempt >= maxRetries) throw e;
+                log.warn("删除{}条购物车数据失败，{}ms后重试", ids.size(), backoff, e);
+                Thread.sleep(backoff);
+                backoff *= 2;
+            }
+        }
+    }
+}
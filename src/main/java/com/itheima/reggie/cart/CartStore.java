@@ -0,0 +1,73 @@
+package com.itheima.reggie.cart;
+
+import com.itheima.reggie.dto.ShoppingCartDelta;
+import com.itheima.reggie.entity.ShoppingCart;
+
+import java.util.List;
+
+/**
+ * 购物车数据的存储方式，通过project.cart.store选择：db直接读写shopping_cart表，redis保存在Redis中并异步同步到表中
+ * <p>
+ * 同一个用户的购物车中，同一个菜品(不区分口味)或套餐只有一条数据
+ */
+public interface CartStore {
+
+    /**
+     * 商品的数量加1，购物车中没有该商品时加入购物车
+     *
+     * @param userId 用户id
+     * @param item   商品信息，需要包含dishId或setmealId
+     * @return 修改后的购物车数据
+     */
+    ShoppingCart add(Long userId, ShoppingCart item);
+
+    /**
+     * 商品的数量减1，减到0时从购物车中删除
+     *
+     * @param userId 用户id
+     * @param item   需要包含dishId或setmealId
+     * @return 修改后的购物车数据，已删除时number为0；购物车中没有该商品时返回null
+     */
+    ShoppingCart sub(Long userId, ShoppingCart item);
+
+    /**
+     * 一次修改多个商品的数量：增加时购物车中没有该商品则加入购物车，减到0时删除，减少购物车中没有的商品时忽略
+     *
+     * @param userId 用户id
+     * @param deltas 每个商品只有一条，delta不为0；增加数量的商品需要包含商品信息
+     * @return 修改后的购物车，按加入时间排序
+     */
+    List<ShoppingCart> applyDeltas(Long userId, List<ShoppingCartDelta> deltas);
+
+    /**
+     * 用户的购物车，按加入时间排序
+     */
+    List<ShoppingCart> list(Long userId);
+
+    /**
+     * 更新购物车中商品的金额
+     *
+     * @param userId 用户id
+     * @param items  需要更新的商品，金额已经修改
+     */
+    void updateAmounts(Long userId, List<ShoppingCart> items);
+
+    /**
+     * 下单成功后从购物车中删除已下单的商品
+     *
+     * @param orderedItems 下单时读取到的购物车数据，可以包含多个用户的数据
+     */
+    void removeOrdered(List<ShoppingCart> orderedItems);
+
+    /**
+     * 清空用户的购物车
+     */
+    void clear(Long userId);
+
+    /**
+     * 商品在购物车中的唯一标识：dish:{菜品id}或setmeal:{套餐id}，与shopping_cart表中item_key列的生成规则一致
+     */
+    static String itemKey(ShoppingCart item) {
+        return item.getDishId() != null ? "dish:" + item.getDishId() : "setmeal:" + item.getSetmealId();
+    }
+}
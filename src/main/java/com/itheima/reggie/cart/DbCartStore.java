@@ -0,0 +1,117 @@
+package com.itheima.reggie.cart;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.itheima.reggie.dto.ShoppingCartDelta;
+import com.itheima.reggie.entity.ShoppingCart;
+import com.itheima.reggie.idgen.SnowflakeIdGenerator;
+import com.itheima.reggie.mapper.ShoppingCartMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 直接读写shopping_cart表，每次加减数量都会访问数据库：加减本身是一条带条件的语句，之后再查询修改后的数据
+ */
+@Component
+@ConditionalOnProperty(name = "project.cart.store", havingValue = "db")
+public class DbCartStore implements CartStore {
+
+    private final ShoppingCartMapper shoppingCartMapper;
+    private final SnowflakeIdGenerator snowflakeIdGenerator;
+
+    public DbCartStore(ShoppingCartMapper shoppingCartMapper, SnowflakeIdGenerator snowflakeIdGenerator) {
+        this.shoppingCartMapper = shoppingCartMapper;
+        this.snowflakeIdGenerator = snowflakeIdGenerator;
+    }
+
+    /**
+     * 加1不需要先查询，之后按唯一索引查询修改后的数据
+     */
+    @Override
+    public ShoppingCart add(Long userId, ShoppingCart item) {
+        // 购物车中已有该商品时只增加数量，这里生成的id不会被使用
+        item.setId(snowflakeIdGenerator.nextId());
+        item.setUserId(userId);
+        item.setCreateTime(LocalDateTime.now());
+        shoppingCartMapper.increase(item);
+        return shoppingCartMapper.selectByItemKey(userId, CartStore.itemKey(item));
+    }
+
+    /**
+     * @return 修改后的购物车数据，已删除时number为0；购物车中没有该商品时返回null
+     */
+    @Override
+    public ShoppingCart sub(Long userId, ShoppingCart item) {
+        String itemKey = CartStore.itemKey(item);
+        if (shoppingCartMapper.decrease(userId, itemKey) == 0) return null;
+        ShoppingCart shoppingCart = shoppingCartMapper.selectByItemKey(userId, itemKey);
+        if (shoppingCart != null && shoppingCart.getNumber() <= 0) {
+            shoppingCartMapper.deleteIfEmpty(userId, itemKey);
+            shoppingCart.setNumber(0);
+        }
+        return shoppingCart;
+    }
+
+    /**
+     * 增加的商品与减少的商品各用一条语句完成，需要在事务中调用
+     */
+    @Override
+    public List<ShoppingCart> applyDeltas(Long userId, List<ShoppingCartDelta> deltas) {
+        List<ShoppingCartDelta> increases = new ArrayList<>();
+        Map<String, Integer> decreases = new LinkedHashMap<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (ShoppingCartDelta delta : deltas) {
+            if (delta.getDelta() > 0) {
+                delta.setId(snowflakeIdGenerator.nextId());
+                delta.setUserId(userId);
+                delta.setCreateTime(now);
+                increases.add(delta);
+            } else {
+                decreases.put(CartStore.itemKey(delta), -delta.getDelta());
+            }
+        }
+        if (!increases.isEmpty()) shoppingCartMapper.increaseBatch(increases);
+        if (!decreases.isEmpty()) {
+            shoppingCartMapper.decreaseBatch(userId, decreases);
+            shoppingCartMapper.delete(new LambdaQueryWrapper<ShoppingCart>()
+                    .eq(ShoppingCart::getUserId, userId)
+                    .le(ShoppingCart::getNumber, 0));
+        }
+        return list(userId);
+    }
+
+    @Override
+    public List<ShoppingCart> list(Long userId) {
+        return shoppingCartMapper.selectList(new LambdaQueryWrapper<ShoppingCart>()
+                .eq(ShoppingCart::getUserId, userId)
+                // 数量减到0的数据会在同一次请求中被删除，这里只是避免恰好读到
+                .gt(ShoppingCart::getNumber, 0)
+                .orderByAsc(ShoppingCart::getCreateTime));
+    }
+
+    @Override
+    public void updateAmounts(Long userId, List<ShoppingCart> items) {
+        items.forEach(item -> shoppingCartMapper.update(null, new LambdaUpdateWrapper<ShoppingCart>()
+                .set(ShoppingCart::getAmount, item.getAmount())
+                .eq(ShoppingCart::getId, item.getId())));
+    }
+
+    @Override
+    public void removeOrdered(List<ShoppingCart> orderedItems) {
+        if (orderedItems.isEmpty()) return;
+        shoppingCartMapper.deleteBatchIds(orderedItems.stream().map(ShoppingCart::getId).collect(Collectors.toList()));
+    }
+
+    @Override
+    public void clear(Long userId) {
+        //SQL:delete from shopping_cart where user_id = ?
+        shoppingCartMapper.delete(new LambdaQueryWrapper<ShoppingCart>().eq(ShoppingCart::getUserId, userId));
+    }
+}
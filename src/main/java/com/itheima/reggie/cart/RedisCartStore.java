@@ -0,0 +1,422 @@
+package com.itheima.reggie.cart;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.itheima.reggie.common.JacksonObjectMapper;
+import com.itheima.reggie.common.JobLease;
+import com.itheima.reggie.dto.ShoppingCartDelta;
+import com.itheima.reggie.entity.ShoppingCart;
+import com.itheima.reggie.idgen.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 购物车保存在Redis中，每个用户两个hash：reggie:cart:{userId}:number保存每个商品的数量，
+ * reggie:cart:{userId}:item保存商品信息(JSON)，field为dish:{菜品id}或setmeal:{套餐id}
+ * <p>
+ * 加减数量各用一个Lua脚本完成，读取、修改、删除在Redis中原子执行，用户快速连续点击也不会丢失或重复计数，
+ * 下单后只扣减下单时读取到的数量，下单期间又加入的部分会保留
+ * <p>
+ * 购物车被修改的用户记录在reggie:cart:dirty中，定时批量将这些用户的购物车写入shopping_cart表(先删除再插入)，
+ * 表中的数据只作为备份与统计使用，读取购物车(包括下单)只访问Redis。同步通过 {@link JobLease} 只在一个节点上依次执行，
+ * 较早读取的购物车不会在较新的之后写入而覆盖表中的数据
+ * <p>
+ * Redis中没有用户的购物车时(从db方式切换过来，或Redis数据丢失)，读取或修改前先将表中未过期的数据加载到Redis，
+ * 之后的同步不会删除这些数据；数量hash中的loaded字段表示已经加载过，购物车被清空后也保留该字段，不会再次从表中加载
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "project.cart.store", havingValue = "redis", matchIfMissing = true)
+public class RedisCartStore implements CartStore {
+
+    private static final String KEY_PREFIX = "reggie:cart:";
+    private static final String DIRTY_KEY = "reggie:cart:dirty";
+    /**
+     * 数量hash中表示已从表中加载过的字段，没有对应的商品信息，读取购物车时会被忽略
+     */
+    private static final String LOADED_FIELD = "loaded";
+    private static final String FLUSH_JOB_NAME = "cart-write-behind";
+
+    /**
+     * KEYS: 数量hash，商品信息hash，待同步用户set
+     * ARGV: field，商品信息，用户id，过期秒数
+     */
+    private static final RedisScript<List> ADD_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('hsetnx', KEYS[2], ARGV[1], ARGV[2]) " +
+                    "local number = redis.call('hincrby', KEYS[1], ARGV[1], 1) " +
+                    "redis.call('expire', KEYS[1], ARGV[4]) " +
+                    "redis.call('expire', KEYS[2], ARGV[4]) " +
+                    "redis.call('sadd', KEYS[3], ARGV[3]) " +
+                    "return {number, redis.call('hget', KEYS[2], ARGV[1])}",
+            List.class);
+    /**
+     * 扣减一个或多个商品的数量，扣减到0时删除该商品，返回最后一个商品扣减后的数量与商品信息，商品不存在时返回nil
+     * KEYS: 数量hash，商品信息hash，待同步用户set
+     * ARGV: 用户id，field1，扣减数量1，field2，扣减数量2...
+     */
+    private static final RedisScript<List> DECREASE_SCRIPT = new DefaultRedisScript<>(
+            "local result = nil " +
+                    "for i = 2, #ARGV, 2 do " +
+                    "  local item = redis.call('hget', KEYS[2], ARGV[i]) " +
+                    "  if item then " +
+                    "    local number = redis.call('hincrby', KEYS[1], ARGV[i], -tonumber(ARGV[i + 1])) " +
+                    "    if number <= 0 then " +
+                    "      redis.call('hdel', KEYS[1], ARGV[i]) " +
+                    "      redis.call('hdel', KEYS[2], ARGV[i]) " +
+                    "      number = 0 " +
+                    "    end " +
+                    "    redis.call('sadd', KEYS[3], ARGV[1]) " +
+                    "    result = {number, item} " +
+                    "  else " +
+                    "    result = nil " +
+                    "  end " +
+                    "end " +
+                    "return result",
+            List.class);
+    /**
+     * 一次修改多个商品的数量：增加时没有该商品则保存商品信息，减到0时删除，减少不存在的商品时忽略
+     * KEYS: 数量hash，商品信息hash，待同步用户set
+     * ARGV: 用户id，过期秒数，field1，数量变化1，商品信息1，field2...
+     */
+    private static final RedisScript<Long> APPLY_SCRIPT = new DefaultRedisScript<>(
+            "for i = 3, #ARGV, 3 do " +
+                    "  local delta = tonumber(ARGV[i + 1]) " +
+                    "  if delta > 0 then " +
+                    "    redis.call('hsetnx', KEYS[2], ARGV[i], ARGV[i + 2]) " +
+                    "    redis.call('hincrby', KEYS[1], ARGV[i], delta) " +
+                    "  elseif redis.call('hexists', KEYS[1], ARGV[i]) == 1 then " +
+                    "    if redis.call('hincrby', KEYS[1], ARGV[i], delta) <= 0 then " +
+                    "      redis.call('hdel', KEYS[1], ARGV[i]) " +
+                    "      redis.call('hdel', KEYS[2], ARGV[i]) " +
+                    "    end " +
+                    "  end " +
+                    "end " +
+                    "redis.call('expire', KEYS[1], ARGV[2]) " +
+                    "redis.call('expire', KEYS[2], ARGV[2]) " +
+                    "redis.call('sadd', KEYS[3], ARGV[1]) " +
+                    "return 1",
+            Long.class);
+    /**
+     * 只更新仍在购物车中的商品的信息
+     * KEYS: 数量hash，商品信息hash，待同步用户set
+     * ARGV: 用户id，field1，商品信息1，field2，商品信息2...
+     */
+    private static final RedisScript<Long> UPDATE_ITEMS_SCRIPT = new DefaultRedisScript<>(
+            "local updated = 0 " +
+                    "for i = 2, #ARGV, 2 do " +
+                    "  if redis.call('hexists', KEYS[1], ARGV[i]) == 1 then " +
+                    "    redis.call('hset', KEYS[2], ARGV[i], ARGV[i + 1]) " +
+                    "    updated = updated + 1 " +
+                    "  end " +
+                    "end " +
+                    "if updated > 0 then redis.call('sadd', KEYS[3], ARGV[1]) end " +
+                    "return updated",
+            Long.class);
+
+    /**
+     * Redis中仍没有该用户的购物车时写入从表中加载的数据，已经存在时(其他请求已加载)不做修改
+     * KEYS: 数量hash，商品信息hash
+     * ARGV: 过期秒数，field1，数量1，商品信息1，field2...
+     */
+    private static final RedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end " +
+                    "redis.call('hset', KEYS[1], '" + LOADED_FIELD + "', '1') " +
+                    "for i = 2, #ARGV, 3 do " +
+                    "  redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) " +
+                    "  redis.call('hset', KEYS[2], ARGV[i], ARGV[i + 2]) " +
+                    "end " +
+                    "redis.call('expire', KEYS[1], ARGV[1]) " +
+                    "if #ARGV > 1 then redis.call('expire', KEYS[2], ARGV[1]) end " +
+                    "return 1",
+            Long.class);
+    /**
+     * 清空购物车并保留已加载标记
+     * KEYS: 数量hash，商品信息hash，待同步用户set
+     * ARGV: 用户id，过期秒数
+     */
+    private static final RedisScript<Long> CLEAR_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('del', KEYS[1], KEYS[2]) " +
+                    "redis.call('hset', KEYS[1], '" + LOADED_FIELD + "', '1') " +
+                    "redis.call('expire', KEYS[1], ARGV[2]) " +
+                    "redis.call('sadd', KEYS[3], ARGV[1]) " +
+                    "return 1",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SnowflakeIdGenerator snowflakeIdGenerator;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JobLease jobLease;
+    private final JacksonObjectMapper objectMapper = new JacksonObjectMapper();
+
+    @Value("${project.cart.redis.ttl-days}")
+    private long ttlDays;
+    @Value("${project.cart.write-behind.enabled}")
+    private boolean writeBehindEnabled;
+    @Value("${project.cart.write-behind.batch-size}")
+    private int writeBehindBatchSize;
+    @Value("${project.cart.write-behind.lease-seconds}")
+    private long writeBehindLeaseSeconds;
+
+    public RedisCartStore(StringRedisTemplate stringRedisTemplate, SnowflakeIdGenerator snowflakeIdGenerator,
+                          NamedParameterJdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, JobLease jobLease) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.snowflakeIdGenerator = snowflakeIdGenerator;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.jobLease = jobLease;
+    }
+
+    @Override
+    public ShoppingCart add(Long userId, ShoppingCart item) {
+        ensureLoaded(userId);
+        // 购物车中已有该商品时，脚本保留原有的商品信息(id、加入时间等)，这里生成的id不会被使用
+        item.setId(snowflakeIdGenerator.nextId());
+        item.setUserId(userId);
+        item.setNumber(null);
+        item.setCreateTime(LocalDateTime.now());
+        List<?> result = stringRedisTemplate.execute(ADD_SCRIPT, keys(userId),
+                CartStore.itemKey(item), toJson(item), String.valueOf(userId), String.valueOf(TimeUnit.DAYS.toSeconds(ttlDays)));
+        return toShoppingCart(result);
+    }
+
+    @Override
+    public ShoppingCart sub(Long userId, ShoppingCart item) {
+        ensureLoaded(userId);
+        List<?> result = stringRedisTemplate.execute(DECREASE_SCRIPT, keys(userId), String.valueOf(userId), CartStore.itemKey(item), "1");
+        return toShoppingCart(result);
+    }
+
+    /**
+     * 所有商品的修改在一个脚本中原子完成
+     */
+    @Override
+    public List<ShoppingCart> applyDeltas(Long userId, List<ShoppingCartDelta> deltas) {
+        ensureLoaded(userId);
+        List<String> args = new ArrayList<>(deltas.size() * 3 + 2);
+        args.add(String.valueOf(userId));
+        args.add(String.valueOf(TimeUnit.DAYS.toSeconds(ttlDays)));
+        LocalDateTime now = LocalDateTime.now();
+        for (ShoppingCartDelta delta : deltas) {
+            args.add(CartStore.itemKey(delta));
+            args.add(String.valueOf(delta.getDelta()));
+            if (delta.getDelta() > 0) {
+                // 与add相同，购物车中已有该商品时保留原有的商品信息
+                ShoppingCart item = new ShoppingCart();
+                BeanUtils.copyProperties(delta, item);
+                item.setId(snowflakeIdGenerator.nextId());
+                item.setUserId(userId);
+                item.setCreateTime(now);
+                args.add(toJson(item));
+            } else {
+                args.add("");
+            }
+        }
+        stringRedisTemplate.execute(APPLY_SCRIPT, keys(userId), args.toArray());
+        return list(userId);
+    }
+
+    @Override
+    public List<ShoppingCart> list(Long userId) {
+        ensureLoaded(userId);
+        List<String> keys = keys(userId);
+        Map<Object, Object> numbers = stringRedisTemplate.opsForHash().entries(keys.get(0));
+        if (numbers.isEmpty()) return new ArrayList<>();
+        Map<Object, Object> items = stringRedisTemplate.opsForHash().entries(keys.get(1));
+        List<ShoppingCart> shoppingCarts = new ArrayList<>(numbers.size());
+        numbers.forEach((field, number) -> {
+            Object item = items.get(field);
+            if (item == null) return;
+            ShoppingCart shoppingCart = fromJson((String) item);
+            shoppingCart.setNumber(Integer.parseInt((String) number));
+            shoppingCarts.add(shoppingCart);
+        });
+        shoppingCarts.sort(Comparator.comparing(ShoppingCart::getCreateTime, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return shoppingCarts;
+    }
+
+    @Override
+    public void updateAmounts(Long userId, List<ShoppingCart> items) {
+        if (items.isEmpty()) return;
+        List<String> args = new ArrayList<>(items.size() * 2 + 1);
+        args.add(String.valueOf(userId));
+        for (ShoppingCart item : items) {
+            args.add(CartStore.itemKey(item));
+            args.add(toJson(item));
+        }
+        stringRedisTemplate.execute(UPDATE_ITEMS_SCRIPT, keys(userId), args.toArray());
+    }
+
+    /**
+     * 在事务中调用时(下单)，事务提交后才扣减，事务回滚时购物车保持不变
+     */
+    @Override
+    public void removeOrdered(List<ShoppingCart> orderedItems) {
+        if (orderedItems.isEmpty()) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    decreaseOrdered(orderedItems);
+                }
+            });
+        } else {
+            decreaseOrdered(orderedItems);
+        }
+    }
+
+    private void decreaseOrdered(List<ShoppingCart> orderedItems) {
+        Map<Long, List<ShoppingCart>> itemsByUser = orderedItems.stream().collect(Collectors.groupingBy(ShoppingCart::getUserId));
+        itemsByUser.forEach((userId, items) -> {
+            List<String> args = new ArrayList<>(items.size() * 2 + 1);
+            args.add(String.valueOf(userId));
+            for (ShoppingCart item : items) {
+                args.add(CartStore.itemKey(item));
+                args.add(String.valueOf(item.getNumber()));
+            }
+            try {
+                stringRedisTemplate.execute(DECREASE_SCRIPT, keys(userId), args.toArray());
+            } catch (Exception e) {
+                // 订单已经写入，购物车中残留的商品由用户自行删除
+                log.error("下单后删除用户{}的购物车失败", userId, e);
+            }
+        });
+    }
+
+    @Override
+    public void clear(Long userId) {
+        stringRedisTemplate.execute(CLEAR_SCRIPT, keys(userId), String.valueOf(userId), String.valueOf(TimeUnit.DAYS.toSeconds(ttlDays)));
+    }
+
+    /**
+     * Redis中没有该用户的购物车时，从表中加载；只加载保存天数内同步过的数据，已经在Redis中过期的购物车不会被恢复
+     */
+    private void ensureLoaded(Long userId) {
+        List<String> keys = keys(userId);
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(keys.get(0)))) return;
+        List<ShoppingCart> shoppingCarts = jdbcTemplate.query(
+                "SELECT id, name, image, user_id, dish_id, setmeal_id, dish_flavor, number, amount, create_time FROM shopping_cart " +
+                        "WHERE user_id = :userId AND update_time >= :since",
+                new MapSqlParameterSource("userId", userId).addValue("since", LocalDateTime.now().minusDays(ttlDays)),
+                new BeanPropertyRowMapper<>(ShoppingCart.class));
+        List<String> args = new ArrayList<>(shoppingCarts.size() * 3 + 1);
+        args.add(String.valueOf(TimeUnit.DAYS.toSeconds(ttlDays)));
+        for (ShoppingCart shoppingCart : shoppingCarts) {
+            args.add(CartStore.itemKey(shoppingCart));
+            args.add(String.valueOf(shoppingCart.getNumber()));
+            args.add(toJson(shoppingCart));
+        }
+        Long loaded = stringRedisTemplate.execute(LOAD_SCRIPT, keys.subList(0, 2), args.toArray());
+        if (Long.valueOf(1).equals(loaded) && !shoppingCarts.isEmpty()) {
+            log.info("已从数据库加载用户{}的购物车，共{}个商品", userId, shoppingCarts.size());
+        }
+    }
+
+    /**
+     * 将购物车被修改过的用户的购物车写入shopping_cart表，每批用户在一个事务中先删除再插入
+     */
+    @Scheduled(fixedDelayString = "${project.cart.write-behind.flush-millis}")
+    public void flushDirty() {
+        if (!writeBehindEnabled) return;
+        try {
+            jobLease.runExclusively(FLUSH_JOB_NAME, Duration.ofSeconds(writeBehindLeaseSeconds), this::flushDirtyUsers);
+        } catch (Exception e) {
+            log.error("同步购物车到数据库失败", e);
+        }
+    }
+
+    private void flushDirtyUsers() {
+        while (true) {
+            List<String> userIds = stringRedisTemplate.opsForSet().pop(DIRTY_KEY, writeBehindBatchSize);
+            if (userIds == null || userIds.isEmpty()) return;
+            try {
+                writeToTable(userIds.stream().map(Long::valueOf).collect(Collectors.toList()));
+            } catch (Exception e) {
+                log.error("同步{}个用户的购物车到数据库失败，下次重试", userIds.size(), e);
+                stringRedisTemplate.opsForSet().add(DIRTY_KEY, userIds.toArray(new String[0]));
+                return;
+            }
+            if (userIds.size() < writeBehindBatchSize) return;
+        }
+    }
+
+    private void writeToTable(List<Long> userIds) {
+        List<ShoppingCart> shoppingCarts = new ArrayList<>();
+        userIds.forEach(userId -> shoppingCarts.addAll(list(userId)));
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM shopping_cart WHERE user_id IN (:userIds)", new MapSqlParameterSource("userIds", userIds));
+            if (shoppingCarts.isEmpty()) return;
+            MapSqlParameterSource params = new MapSqlParameterSource();
+            StringJoiner values = new StringJoiner(", ");
+            for (int i = 0; i < shoppingCarts.size(); i++) {
+                ShoppingCart shoppingCart = shoppingCarts.get(i);
+                values.add("(:id" + i + ", :name" + i + ", :image" + i + ", :userId" + i + ", :dishId" + i + ", :setmealId" + i +
+                        ", :dishFlavor" + i + ", :number" + i + ", :amount" + i + ", :createTime" + i + ")");
+                params.addValue("id" + i, shoppingCart.getId())
+                        .addValue("name" + i, shoppingCart.getName())
+                        .addValue("image" + i, shoppingCart.getImage())
+                        .addValue("userId" + i, shoppingCart.getUserId())
+                        .addValue("dishId" + i, shoppingCart.getDishId())
+                        .addValue("setmealId" + i, shoppingCart.getSetmealId())
+                        .addValue("dishFlavor" + i, shoppingCart.getDishFlavor())
+                        .addValue("number" + i, shoppingCart.getNumber())
+                        .addValue("amount" + i, shoppingCart.getAmount())
+                        .addValue("createTime" + i, shoppingCart.getCreateTime());
+            }
+            jdbcTemplate.update("INSERT INTO shopping_cart (id, name, image, user_id, dish_id, setmeal_id, dish_flavor, number, amount, create_time) " +
+                    "VALUES " + values, params);
+        });
+    }
+
+    private ShoppingCart toShoppingCart(List<?> result) {
+        if (result == null || result.size() < 2 || result.get(1) == null) return null;
+        ShoppingCart shoppingCart = fromJson((String) result.get(1));
+        shoppingCart.setNumber(((Long) result.get(0)).intValue());
+        return shoppingCart;
+    }
+
+    private static List<String> keys(Long userId) {
+        return Arrays.asList(KEY_PREFIX + userId + ":number", KEY_PREFIX + userId + ":item", DIRTY_KEY);
+    }
+
+    /**
+     * 数量单独保存，商品信息中不包含数量
+     */
+    private String toJson(ShoppingCart item) {
+        Integer number = item.getNumber();
+        item.setNumber(null);
+        try {
+            return objectMapper.writeValueAsString(item);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            item.setNumber(number);
+        }
+    }
+
+    private ShoppingCart fromJson(String json) {
+        try {
+            return objectMapper.readValue(json, ShoppingCart.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.itheima.reggie.common;
+
+import com.itheima.reggie.exception.UnclassifiedBusinessException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 游标分页(keyset分页)结果
+ * <p>
+ * 与Page不同，游标分页不查询总条数，也不使用 LIMIT offset,size，
+ * 而是记住上一页最后一条数据的排序键(时间,id)，下一页直接从该位置之后开始查询，查询耗时与翻到第几页无关
+ * <p>
+ * 游标的格式为 "yyyy-MM-dd HH:mm:ss,id"，next为null表示已经没有更多数据
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+
+    private static final DateTimeFormatter CURSOR_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    /**
+     * 每页最多条数，超过时按该值查询
+     */
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private List<T> records = new ArrayList<>();
+    /**
+     * 下一页的游标
+     */
+    private String next;
+
+    /**
+     * 由多查询了一条的结果构造游标分页：多出的那一条存在，说明还有下一页
+     *
+     * @param rows     按排序键倒序查询的结果，最多pageSize + 1条
+     * @param pageSize 每页条数
+     * @param timeGetter 排序键中的时间
+     * @param idGetter   排序键中的id
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int pageSize,
+                                       Function<T, LocalDateTime> timeGetter, Function<T, Long> idGetter) {
+        if (rows.size() <= pageSize) return new CursorPage<>(rows, null);
+        List<T> records = new ArrayList<>(rows.subList(0, pageSize));
+        T last = records.get(pageSize - 1);
+        return new CursorPage<>(records, encode(timeGetter.apply(last), idGetter.apply(last)));
+    }
+
+    /**
+     * 校验每页条数，在查询之前调用
+     *
+     * @return 实际使用的每页条数，不超过MAX_PAGE_SIZE
+     */
+    public static int checkPageSize(int pageSize) {
+        if (pageSize < 1) throw new UnclassifiedBusinessException("每页条数必须大于0");
+        return Math.min(pageSize, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * 转换记录的类型，游标保持不变
+     *
+     * @param converter 记录的转换方法
+     */
+    public <R> CursorPage<R> convert(Function<List<T>, List<R>> converter) {
+        return new CursorPage<>(converter.apply(records), next);
+    }
+
+    public static String encode(LocalDateTime time, Long id) {
+        return CURSOR_TIME_FORMATTER.format(time) + "," + id;
+    }
+
+    /**
+     * 解析游标
+     *
+     * @param cursor 游标，为空时表示查询第一页
+     * @return 游标对应的排序键，查询第一页时返回null
+     */
+    public static Cursor parse(String cursor) {
+        if (!StringUtils.hasText(cursor)) return null;
+        String[] parts = cursor.split(",");
+        try {
+            if (parts.length != 2) throw new IllegalArgumentException();
+            return new Cursor(LocalDateTime.parse(parts[0].trim(), CURSOR_TIME_FORMATTER), Long.valueOf(parts[1].trim()));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new UnclassifiedBusinessException("分页游标格式有误：" + cursor);
+        }
+    }
+
+    /**
+     * 游标对应的排序键
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Cursor {
+        private LocalDateTime time;
+        private Long id;
+    }
+}
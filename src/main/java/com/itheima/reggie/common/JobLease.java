@@ -0,0 +1,57 @@
+package com.itheima.reggie.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * 定时任务租约：集群中每个节点都会触发同一个定时任务，只有拿到租约的节点执行，其他节点直接跳过
+ * <p>
+ * 租约带有过期时间，执行任务的节点宕机后租约自动过期；过期时间应大于任务的最长耗时
+ */
+@Slf4j
+@Component
+public class JobLease {
+
+    private static final String LEASE_KEY_PREFIX = "reggie:job:lease:";
+    /**
+     * 只删除自己持有的租约，避免误删租约过期后被其他节点重新获取的租约
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public JobLease(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 拿到租约时执行任务，执行完成后释放租约
+     *
+     * @param jobName   任务名称，同名任务同一时间只有一个节点执行
+     * @param leaseTime 租约的过期时间
+     * @return 是否执行了任务，租约已被其他节点持有时返回false
+     */
+    public boolean runExclusively(String jobName, Duration leaseTime, Runnable job) {
+        String key = LEASE_KEY_PREFIX + jobName;
+        String token = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(key, token, leaseTime))) {
+            log.debug("任务{}正在其他节点执行，本节点跳过", jobName);
+            return false;
+        }
+        try {
+            job.run();
+            return true;
+        } finally {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(key), token);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.itheima.reggie.config;
+
+import com.itheima.reggie.idgen.DailyOrderNumberGenerator;
+import com.itheima.reggie.idgen.SnowflakeIdGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * id与订单号生成器配置
+ */
+@Configuration
+public class IdGeneratorConfig {
+
+    /**
+     * 雪花算法id生成器，MyBatis-Plus检测到IdentifierGenerator类型的Bean后，ASSIGN_ID主键也会使用它生成
+     */
+    @Bean
+    public SnowflakeIdGenerator snowflakeIdGenerator(@Value("${project.id.worker-id}") long workerId,
+                                                     @Value("${project.id.max-backward-millis}") long maxBackwardMillis) {
+        return new SnowflakeIdGenerator(workerId, maxBackwardMillis);
+    }
+
+    @Bean
+    public DailyOrderNumberGenerator dailyOrderNumberGenerator(StringRedisTemplate stringRedisTemplate,
+                                                               @Value("${project.id.order-number-segment-size}") long segmentSize) {
+        return new DailyOrderNumberGenerator(stringRedisTemplate, segmentSize);
+    }
+}
@@ -1,13 +1,32 @@
 package com.itheima.reggie.config;
 
+import com.itheima.reggie.cache.CacheLoadLease;
+import com.itheima.reggie.cache.CacheValueCodec;
+import com.itheima.reggie.cache.CodecRedisCacheManager;
+import com.itheima.reggie.cache.JacksonCacheValueCodec;
+import com.itheima.reggie.cache.JdkCacheValueCodec;
+import com.itheima.reggie.cache.TwoLevelCacheManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.cache.CacheProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.annotation.CachingConfigurerSupport;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.time.Duration;
+
 @Configuration
+@EnableConfigurationProperties(CacheProperties.class)
 public class RedisConfig extends CachingConfigurerSupport {
     /*
      springboot与Redis的底层交互是以二进制的形式 (byte[]) 进行的, 因此，需要设定该如何序列化java对象
@@ -53,4 +72,73 @@ public class RedisConfig extends CachingConfigurerSupport {
         return redisTemplate;
     }
 
+    /**
+     * Redis消息监听容器，各个节点之间通过Redis发布订阅传递通知(例如缓存失效通知)
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    /**
+     * Redis缓存值的编解码方式
+     * <p>
+     * 与上面RedisTemplate的情况不同，缓存中保存的菜单数据(如R&lt;List&lt;DishDto&gt;&gt;)占据了Redis的大部分内存与网络流量，
+     * 默认的JDK序列化体积大、解码慢，因此默认改为使用JSON，可通过project.cache.codec切换回jdk
+     */
+    @Bean
+    public CacheValueCodec cacheValueCodec(@Value("${project.cache.codec}") String codec) {
+        return "jdk".equalsIgnoreCase(codec) ? new JdkCacheValueCodec() : new JacksonCacheValueCodec();
+    }
+
+    /**
+     * 缓存重建租约，多个节点同时未命中同一个key时，只有一个节点查询数据库
+     */
+    @Bean
+    public CacheLoadLease cacheLoadLease(StringRedisTemplate stringRedisTemplate,
+                                         @Value("${project.cache.lease.enabled}") boolean enabled,
+                                         @Value("${project.cache.lease.lease-seconds}") long leaseSeconds,
+                                         @Value("${project.cache.lease.wait-millis}") long waitMillis,
+                                         @Value("${project.cache.lease.poll-millis}") long pollMillis) {
+        return new CacheLoadLease(stringRedisTemplate, enabled, Duration.ofSeconds(leaseSeconds), waitMillis, pollMillis);
+    }
+
+    /**
+     * 二级缓存管理器：本地Caffeine缓存 + Redis缓存
+     * <p>
+     * 用户端浏览菜单的请求占了绝大部分流量，本地缓存命中时无需经过网络访问Redis，也无需反序列化；
+     * 某个节点删除缓存时，会通过Redis发布订阅通知其他节点删除各自的本地缓存
+     * <p>
+     * 由于自定义了CacheManager，SpringBoot不会再自动配置RedisCacheManager，
+     * 因此这里需要自己读取spring.cache.redis下的配置
+     */
+    @Bean
+    public TwoLevelCacheManager cacheManager(RedisConnectionFactory connectionFactory,
+                                             CacheProperties cacheProperties,
+                                             StringRedisTemplate stringRedisTemplate,
+                                             RedisMessageListenerContainer redisMessageListenerContainer,
+                                             CacheValueCodec cacheValueCodec,
+                                             CacheLoadLease cacheLoadLease,
+                                             MeterRegistry meterRegistry,
+                                             @Value("${project.cache.compress-threshold}") int compressThreshold,
+                                             @Value("${project.cache.local.maximum-size}") long localMaximumSize,
+                                             @Value("${project.cache.local.expire-seconds}") long localExpireSeconds,
+                                             @Value("${project.cache.local.refresh-after-seconds}") long localRefreshAfterSeconds) {
+        RedisCacheConfiguration redisCacheConfiguration = RedisCacheConfiguration.defaultCacheConfig();
+        Duration timeToLive = cacheProperties.getRedis().getTimeToLive();
+        if (timeToLive != null) redisCacheConfiguration = redisCacheConfiguration.entryTtl(timeToLive);
+        // 值的序列化器由CodecRedisCacheManager为每个缓存单独创建，以便按缓存名称统计编码大小与耗时
+        RedisCacheManager redisCacheManager = new CodecRedisCacheManager(
+                RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory),
+                redisCacheConfiguration, cacheValueCodec, compressThreshold, meterRegistry);
+        redisCacheManager.afterPropertiesSet();
+
+        TwoLevelCacheManager cacheManager = new TwoLevelCacheManager(
+                redisCacheManager, stringRedisTemplate, localMaximumSize, Duration.ofSeconds(localExpireSeconds),
+                Duration.ofSeconds(localRefreshAfterSeconds), cacheLoadLease);
+        redisMessageListenerContainer.addMessageListener(cacheManager, new ChannelTopic(TwoLevelCacheManager.EVICT_CHANNEL));
+        return cacheManager;
+    }
 }
@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.itheima.reggie.common.R;
 import com.itheima.reggie.entity.Category;
 import com.itheima.reggie.service.CategoryService;
+import com.itheima.reggie.service.MenuSnapshotService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 
@@ -14,14 +15,17 @@ import java.util.List;
 @Slf4j
 public class CategoryController {
     private final CategoryService categoryService;
+    private final MenuSnapshotService menuSnapshotService;
 
-    public CategoryController(CategoryService categoryService) {
+    public CategoryController(CategoryService categoryService, MenuSnapshotService menuSnapshotService) {
         this.categoryService = categoryService;
+        this.menuSnapshotService = menuSnapshotService;
     }
 
     @PostMapping
     public R<String> save(@RequestBody Category category) {
         categoryService.save(category);
+        menuSnapshotService.bumpVersion();
         return R.success("新增分类成功");
     }
 
@@ -34,12 +38,14 @@ public class CategoryController {
     @DeleteMapping
     public R<String> remove(Long id) {
         categoryService.remove(id);
+        menuSnapshotService.bumpVersion();
         return R.success("删除分类成功");
     }
 
     @PutMapping
     public R<String> update(@RequestBody Category category) {
         categoryService.updateById(category);
+        menuSnapshotService.bumpVersion();
         return R.success("修改分类成功");
     }
 
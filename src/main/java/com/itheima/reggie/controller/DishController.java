@@ -1,16 +1,21 @@
 package com.itheima.reggie.controller;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.itheima.reggie.cache.MenuCacheInvalidator;
+import com.itheima.reggie.common.CursorPage;
 import com.itheima.reggie.common.R;
 import com.itheima.reggie.dto.DishDto;
 import com.itheima.reggie.entity.Dish;
 import com.itheima.reggie.service.DishService;
+import com.itheima.reggie.service.MenuSnapshotService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 /**
  * 菜品管理
@@ -20,13 +25,18 @@ import java.util.List;
 @Slf4j
 public class DishController {
     private final DishService dishService;
+    private final MenuSnapshotService menuSnapshotService;
+    private final MenuCacheInvalidator menuCacheInvalidator;
 
-    public DishController(DishService dishService) {
+    public DishController(DishService dishService, MenuSnapshotService menuSnapshotService,
+                          MenuCacheInvalidator menuCacheInvalidator) {
         this.dishService = dishService;
+        this.menuSnapshotService = menuSnapshotService;
+        this.menuCacheInvalidator = menuCacheInvalidator;
     }
 
     //region 管理端API
-    // 后台操作并发量不大，不需要缓存，但在CRUD操作后需要清除缓存
+    // 后台操作并发量不大，不需要缓存，但在CRUD操作后需要清除缓存，并递增用户端菜单快照的版本号
 
     /**
      * 管理端添加新的菜品，同时向菜品和菜品口味表中添加数据
@@ -39,32 +49,43 @@ public class DishController {
     @PostMapping
     public R<String> save(@RequestBody DishDto dishDto) {
         dishService.saveWithFlavor(dishDto);
+        menuSnapshotService.bumpVersion();
         return R.success("新增成功");
     }
 
     /**
      * 管理端删除菜品信息，同时删除菜品和菜品口味表中的数据
+     * <p>
+     * 删除完成后，只清除这些菜品所属分类的缓存
      *
      * @param ids 菜品id
      */
-    @CacheEvict(value = "dishListByCategory", allEntries = true)
     @DeleteMapping
     public R<String> delete(@RequestParam List<Long> ids) {
+        Set<Long> categoryIds = dishService.getCategoryIDsByDishIDs(ids);
         // 需要进行逻辑删除的信息有：菜品信息、菜品口味信息
         // 同时还需要判定，如果菜品目前正在起售中，那么不能删除
         dishService.deleteWithFlavor(ids);
+        menuCacheInvalidator.evictDishLists(categoryIds);
+        menuSnapshotService.bumpVersion();
         return R.success("删除套餐成功");
     }
 
     /**
      * 管理端更新菜品信息，同时更新菜品和菜品口味表中的数据
+     * <p>
+     * 菜品可能被移动到了其他分类，所以修改前后两个分类的缓存都需要清除
      *
      * @param dishDto 菜品和口味信息
      */
-    @CacheEvict(value = "dishListByCategory", key = "#dishDto.categoryId")
     @PutMapping
     public R<String> update(@RequestBody DishDto dishDto) {
+        // 必须在修改之前查询原分类
+        Set<Long> categoryIds = dishService.getCategoryIDsByDishIDs(Collections.singletonList(dishDto.getId()));
+        categoryIds.add(dishDto.getCategoryId());
         dishService.updateWithFlavor(dishDto);
+        menuCacheInvalidator.evictDishLists(categoryIds);
+        menuSnapshotService.bumpVersion();
         return R.success("修改成功");
     }
 
@@ -74,10 +95,11 @@ public class DishController {
      * @param status 状态
      * @param ids    菜品id
      */
-    @CacheEvict(value = "dishListByCategory", allEntries = true)
     @PostMapping("/status/{status}")
     public R<String> updateStatus(@PathVariable Integer status, @RequestParam List<Long> ids) {
         dishService.updateStatus(status, ids);
+        menuCacheInvalidator.evictDishLists(dishService.getCategoryIDsByDishIDs(ids));
+        menuSnapshotService.bumpVersion();
         return R.success("修改成功");
     }
 
@@ -102,6 +124,17 @@ public class DishController {
         Page<DishDto> dishDtoPage = dishService.convertToDishDtoPage(dishPage);
         return R.success(dishDtoPage);
     }
+
+    /**
+     * 管理端游标分页查询菜品信息：请求中带有after参数时使用，after为空表示查询第一页，之后传入上一页返回的next
+     * <p>
+     * 不查询总条数，也不使用OFFSET
+     */
+    @GetMapping(value = "/page", params = "after")
+    public R<CursorPage<DishDto>> cursorPage(String after, int pageSize, String name) {
+        CursorPage<Dish> dishPage = dishService.getDishCursorPage(after, pageSize, name);
+        return R.success(dishPage.convert(dishService::convertToDishDtoListWithCategoryName));
+    }
     //endregion
 
     //region 用户端API
@@ -110,10 +143,12 @@ public class DishController {
      * 用户端根据分类查询相关菜品信息
      * <p>
      * 先从Redis中获取缓存数据，存在则直接返回，没有则查询mysql，然后缓存并返回
+     * <p>
+     * sync = true：缓存失效时，同一个分类只有一个请求查询mysql，其他请求等待其结果
      *
      * @param condition 封装的查询条件
      */
-    @Cacheable(value = "dishListByCategory", key = "#condition.categoryId")
+    @Cacheable(value = "dishListByCategory", key = "#condition.categoryId", sync = true)
     @GetMapping("/list")
     public R<List<DishDto>> list(Dish condition) {
         List<Dish> dishListByCategory = dishService.getDishListByCategory(condition);
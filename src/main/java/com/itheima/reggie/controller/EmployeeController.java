@@ -1,6 +1,8 @@
 package com.itheima.reggie.controller;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.itheima.reggie.auth.LoginManager;
+import com.itheima.reggie.auth.LoginType;
 import com.itheima.reggie.common.R;
 import com.itheima.reggie.entity.Employee;
 import com.itheima.reggie.service.EmployeeService;
@@ -9,22 +11,25 @@ import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 @Slf4j
 @RestController
 @RequestMapping("/employee")
 public class EmployeeController {
     private final EmployeeService employeeService;
+    private final LoginManager loginManager;
 
-    public EmployeeController(EmployeeService employeeService) {
+    public EmployeeController(EmployeeService employeeService, LoginManager loginManager) {
         this.employeeService = employeeService;
+        this.loginManager = loginManager;
     }
 
     /**
      * 员工登录
      */
     @PostMapping("/login")
-    public R<Employee> login(@RequestBody Employee employee, HttpServletRequest request) {
+    public R<Employee> login(@RequestBody Employee employee, HttpServletRequest request, HttpServletResponse response) {
         // 1.将页面提交的密码进行加密
         String password = DigestUtils.md5DigestAsHex(employee.getPassword().getBytes());
         // 2. 根据用户名查询数据库
@@ -38,8 +43,8 @@ public class EmployeeController {
         if (!password.equals(dataInDB.getPassword())) return R.error("登陆失败，密码错误");
         // 5. 查看员工状态是否被禁用
         if (dataInDB.getStatus() == 0) return R.error("登陆失败，该用户已被禁用");
-        // 6. 登录成功，将用户Id信息存入session
-        request.getSession().setAttribute("employee", dataInDB.getId());
+        // 6. 登录成功，保存登录状态(Session或token，见project.auth.mode)
+        loginManager.login(LoginType.EMPLOYEE, dataInDB.getId(), request, response);
         // 7. 将用户信息返回客户端
         return R.success(dataInDB);
     }
@@ -48,9 +53,9 @@ public class EmployeeController {
      * 员工退出登录
      */
     @PostMapping("/logout")
-    public R<String> logout(HttpServletRequest request) {
-        // 1. 清除session中的用户Id信息
-        request.getSession().removeAttribute("employee");
+    public R<String> logout(HttpServletRequest request, HttpServletResponse response) {
+        // 1. 清除登录状态
+        loginManager.logout(LoginType.EMPLOYEE, request, response);
         // 2. 返回成功结果
         return R.success("退出成功");
     }
@@ -0,0 +1,56 @@
+package com.itheima.reggie.controller;
+
+import com.itheima.reggie.dto.MenuSnapshot;
+import com.itheima.reggie.service.MenuSnapshotService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 用户端菜单
+ */
+@Slf4j
+@RestController
+@RequestMapping("/menu")
+public class MenuController {
+
+    private final MenuSnapshotService menuSnapshotService;
+
+    public MenuController(MenuSnapshotService menuSnapshotService) {
+        this.menuSnapshotService = menuSnapshotService;
+    }
+
+    /**
+     * 一次性获取完整的在售菜单(分类、菜品及口味、套餐)，代替逐个分类调用 /dish/list 与 /setmeal/list
+     * <p>
+     * 响应头中带有菜单版本对应的ETag，客户端携带If-None-Match请求且菜单未变化时直接返回304；
+     * ETag由内存中的版本号生成，返回304时不需要读取快照
+     *
+     * @param webRequest 用于处理If-None-Match条件请求
+     * @param response   快照已经是序列化好的JSON，直接写入响应
+     */
+    @GetMapping("/snapshot")
+    public void snapshot(WebRequest webRequest, HttpServletResponse response) throws IOException {
+        long version = menuSnapshotService.getCurrentVersion();
+        // 要求客户端每次使用前都进行协商，以便菜单修改后能立刻拿到新版本
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        if (webRequest.checkNotModified(MenuSnapshot.toETag(version))) return;
+        // 读取与ETag相同版本的快照，期间版本号变化时也不会出现ETag与内容不一致
+        byte[] body = menuSnapshotService.getSnapshot(version).getBody();
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentLength(body.length);
+        ServletOutputStream outputStream = response.getOutputStream();
+        outputStream.write(body);
+        outputStream.flush();
+    }
+}
@@ -1,17 +1,31 @@
 package com.itheima.reggie.controller;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.itheima.reggie.common.BaseContext;
+import com.itheima.reggie.common.CursorPage;
 import com.itheima.reggie.common.R;
+import com.itheima.reggie.dto.OrderStatusBatch;
+import com.itheima.reggie.dto.OrderStatusChangeResult;
 import com.itheima.reggie.dto.OrdersDto;
+import com.itheima.reggie.dto.PendingOrder;
 import com.itheima.reggie.entity.OrderDetail;
 import com.itheima.reggie.entity.Orders;
+import com.itheima.reggie.exception.UnclassifiedBusinessException;
+import com.itheima.reggie.order.IdempotentSubmitGuard;
+import com.itheima.reggie.order.OrderEventHub;
+import com.itheima.reggie.order.OrderSubmitPipeline;
+import com.itheima.reggie.order.OrderSubmitStatus;
 import com.itheima.reggie.service.OrderDetailService;
 import com.itheima.reggie.service.OrderService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -24,41 +38,137 @@ public class OrderController {
 
     private final OrderService orderService;
     private final OrderDetailService orderDetailService;
+    private final OrderSubmitPipeline orderSubmitPipeline;
+    private final IdempotentSubmitGuard idempotentSubmitGuard;
+    private final OrderEventHub orderEventHub;
 
-    public OrderController(OrderService orderService, OrderDetailService orderDetailService) {
+    public OrderController(OrderService orderService, OrderDetailService orderDetailService,
+                           OrderSubmitPipeline orderSubmitPipeline, IdempotentSubmitGuard idempotentSubmitGuard,
+                           OrderEventHub orderEventHub) {
         this.orderService = orderService;
         this.orderDetailService = orderDetailService;
+        this.orderSubmitPipeline = orderSubmitPipeline;
+        this.idempotentSubmitGuard = idempotentSubmitGuard;
+        this.orderEventHub = orderEventHub;
     }
 
     /**
      * 用户下单
+     * <p>
+     * 请求头中携带Idempotency-Key时，使用同一标识的重复请求直接返回第一次请求的结果，不会重复下单
+     * <p>
+     * 开启异步下单流水线时，订单校验通过后立即返回订单id(map.orderId)，
+     * 此时订单还没有写入数据库，客户端通过 /order/submit/{orderId} 查询写入结果
      */
     @PostMapping("/submit")
-    public R<String> submit(@RequestBody Orders orders) {
-        orderService.submit(orders);
-        return R.success("下单成功");
+    public R<String> submit(@RequestBody Orders orders,
+                            @RequestHeader(value = IdempotentSubmitGuard.HEADER_NAME, required = false) String idempotencyKey) {
+        return idempotentSubmitGuard.execute(BaseContext.getCurrentId(), idempotencyKey, () -> {
+            if (orderSubmitPipeline.isEnabled()) {
+                PendingOrder pendingOrder = orderService.prepare(orders);
+                orderSubmitPipeline.submit(pendingOrder);
+                return R.success("订单已提交")
+                        .add("orderId", String.valueOf(pendingOrder.getOrders().getId()))
+                        .add("status", OrderSubmitStatus.PROCESSING);
+            }
+            orderService.submit(orders);
+            return R.success("下单成功").add("orderId", String.valueOf(orders.getId()));
+        });
+    }
+
+    /**
+     * 修改订单状态(派送、完成、取消)，只有管理端可以操作
+     */
+    @PutMapping
+    public R<String> updateStatus(@RequestAttribute(value = "employee", required = false) Long employeeId,
+                                  @RequestBody Orders orders) {
+        if (employeeId == null) return R.error("只有管理端可以修改订单状态");
+        if (orders.getId() == null) return R.error("订单不存在");
+        OrderStatusChangeResult result = orderService.changeStatus(Collections.singletonList(orders.getId()), orders.getStatus()).get(0);
+        return result.isSuccess() ? R.success("订单状态修改成功") : R.error(result.getMsg());
+    }
+
+    /**
+     * 批量修改订单状态，返回每个订单的修改结果，map中返回成功与失败的个数；只有管理端可以操作
+     */
+    @PutMapping("/batch")
+    public R<List<OrderStatusChangeResult>> updateStatusBatch(@RequestAttribute(value = "employee", required = false) Long employeeId,
+                                                              @RequestBody OrderStatusBatch orderStatusBatch) {
+        if (employeeId == null) return R.error("只有管理端可以修改订单状态");
+        List<OrderStatusChangeResult> results = orderService.changeStatus(orderStatusBatch.getIds(), orderStatusBatch.getStatus());
+        long succeeded = results.stream().filter(OrderStatusChangeResult::isSuccess).count();
+        return R.success(results).add("succeeded", succeeded).add("failed", results.size() - succeeded);
+    }
+
+    /**
+     * 管理端订阅订单事件(新订单、状态变化)，断线重连时浏览器会在Last-Event-ID中携带收到的最后一个事件id
+     */
+    @GetMapping("/events")
+    public SseEmitter events(@RequestAttribute(value = "employee", required = false) Long employeeId,
+                             @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        if (employeeId == null) throw new UnclassifiedBusinessException("只有管理端可以订阅订单事件");
+        if (!orderEventHub.isEnabled()) throw new UnclassifiedBusinessException("订单事件推送未开启");
+        return orderEventHub.subscribe(lastEventId);
+    }
+
+    /**
+     * 查询异步下单的写入状态：PROCESSING 处理中，SUCCESS 下单成功，FAILED 下单失败
+     *
+     * @param orderId 下单时返回的订单id
+     */
+    @GetMapping("/submit/{orderId}")
+    public R<OrderSubmitStatus> submitStatus(@PathVariable Long orderId) {
+        OrderSubmitStatus status = orderSubmitPipeline.getStatus(BaseContext.getCurrentId(), orderId);
+        if (status == null) return R.error("订单不存在或已过期");
+        return R.success(status);
     }
 
     @GetMapping("/page")
-    public R<Page<OrdersDto>> page(int page, int pageSize, Long number, String beginTime, String endTime) {
+    public R<Page<OrdersDto>> page(int page, int pageSize, String number, String beginTime, String endTime) {
         //先查询订单表中的信息
         Page<Orders> ordersPage = orderService.getDataAsPage(page, pageSize, number, beginTime, endTime);
 
+        //再将DTO转换为Page
+        Page<OrdersDto> ordersDtoPage = new Page<>(page, pageSize);
+        BeanUtils.copyProperties(ordersPage, ordersDtoPage, "records");
+        ordersDtoPage.setRecords(convertToOrdersDtoList(ordersPage.getRecords()));
+        return R.success(ordersDtoPage);
+    }
+
+    /**
+     * 游标分页查询订单：请求中带有after参数时使用，after为空表示查询第一页，之后传入上一页返回的next
+     * <p>
+     * 不查询总条数，也不使用OFFSET，在订单量很大时翻页耗时保持稳定；管理端页面依然使用上面的分页接口
+     */
+    @GetMapping(value = "/page", params = "after")
+    public R<CursorPage<OrdersDto>> cursorPage(String after, int pageSize, String number, String beginTime, String endTime) {
+        CursorPage<Orders> ordersPage = orderService.getDataAsCursorPage(after, pageSize, number, beginTime, endTime);
+        return R.success(ordersPage.convert(this::convertToOrdersDtoList));
+    }
+
+    /**
+     * 用户端按下单时间倒序游标分页查询自己的订单：after为空表示查询第一页，之后传入上一页返回的next
+     */
+    @GetMapping("/userPage")
+    public R<CursorPage<OrdersDto>> userPage(String after, int pageSize) {
+        CursorPage<Orders> ordersPage = orderService.getDataByUserIDAsCursorPage(BaseContext.getCurrentId(), after, pageSize);
+        return R.success(ordersPage.convert(this::convertToOrdersDtoList));
+    }
 
-        // TODO 可以考虑将下述逻辑抽取到Service层
-        //Page中的订单转换为订单DTO,添加订单详情表中的信息
-        List<OrdersDto> ordersDtoList = ordersPage.getRecords().stream().map((order) -> {
+    // TODO 可以考虑将下述逻辑抽取到Service层
+    /**
+     * 订单转换为订单DTO,添加订单详情表中的信息
+     * <p>
+     * 一页订单的明细用一条IN查询批量获取，再在内存中按订单分组，避免每个订单各查询一次数据库(N+1问题)
+     */
+    private List<OrdersDto> convertToOrdersDtoList(List<Orders> ordersList) {
+        List<Long> orderIds = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+        Map<Long, List<OrderDetail>> orderDetailsByOrderId = orderDetailService.getDataByOrderIDsAsMap(orderIds);
+        return ordersList.stream().map((order) -> {
             OrdersDto ordersDto = new OrdersDto();
             BeanUtils.copyProperties(order, ordersDto);
-            List<OrderDetail> orderDetailList = orderDetailService.getDataByOrderIDAsList(order.getId());
-            ordersDto.setOrderDetails(orderDetailList);
+            ordersDto.setOrderDetails(orderDetailsByOrderId.getOrDefault(order.getId(), new ArrayList<>()));
             return ordersDto;
         }).collect(Collectors.toList());
-
-        //再将DTO转换为Page
-        Page<OrdersDto> ordersDtoPage = new Page<>(page, pageSize);
-        BeanUtils.copyProperties(ordersPage, ordersDtoPage, "records");
-        ordersDtoPage.setRecords(ordersDtoList);
-        return R.success(ordersDtoPage);
     }
-}
\ No newline at end of file
+}
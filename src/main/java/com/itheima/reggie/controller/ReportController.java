@@ -0,0 +1,84 @@
+package com.itheima.reggie.controller;
+
+import com.itheima.reggie.common.R;
+import com.itheima.reggie.dto.SalesCategoryStat;
+import com.itheima.reggie.dto.SalesItemStat;
+import com.itheima.reggie.dto.SalesPeriodStat;
+import com.itheima.reggie.report.SalesRollupReconciler;
+import com.itheima.reggie.service.ReportService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 管理端销售报表，日期格式为 yyyy-MM-dd，只有管理端可以访问
+ */
+@Slf4j
+@RestController
+@RequestMapping("/report")
+public class ReportController {
+
+    private static final String EMPLOYEE_ONLY = "只有管理端可以查看销售报表";
+
+    private final ReportService reportService;
+    private final SalesRollupReconciler salesRollupReconciler;
+
+    public ReportController(ReportService reportService, SalesRollupReconciler salesRollupReconciler) {
+        this.reportService = reportService;
+        this.salesRollupReconciler = salesRollupReconciler;
+    }
+
+    @GetMapping("/daily")
+    public R<List<SalesPeriodStat>> daily(@RequestAttribute(value = "employee", required = false) Long employeeId,
+                                          @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                          @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end) {
+        if (employeeId == null) return R.error(EMPLOYEE_ONLY);
+        return R.success(reportService.getDailyStats(begin, end));
+    }
+
+    @GetMapping("/hourly")
+    public R<List<SalesPeriodStat>> hourly(@RequestAttribute(value = "employee", required = false) Long employeeId,
+                                           @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate date) {
+        if (employeeId == null) return R.error(EMPLOYEE_ONLY);
+        return R.success(reportService.getHourlyStats(date));
+    }
+
+    /**
+     * 菜品、套餐销售排行
+     *
+     * @param itemType 1菜品，2套餐，不传时统计全部
+     */
+    @GetMapping("/items")
+    public R<List<SalesItemStat>> items(@RequestAttribute(value = "employee", required = false) Long employeeId,
+                                        @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                        @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end,
+                                        Integer itemType,
+                                        @RequestParam(defaultValue = "20") int limit) {
+        if (employeeId == null) return R.error(EMPLOYEE_ONLY);
+        return R.success(reportService.getItemStats(begin, end, itemType, Math.min(Math.max(limit, 1), 100)));
+    }
+
+    @GetMapping("/categories")
+    public R<List<SalesCategoryStat>> categories(@RequestAttribute(value = "employee", required = false) Long employeeId,
+                                                 @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                                 @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end) {
+        if (employeeId == null) return R.error(EMPLOYEE_ONLY);
+        return R.success(reportService.getCategoryStats(begin, end));
+    }
+
+    /**
+     * 根据订单数据重建某一天的汇总，只有管理端可以操作
+     */
+    @PostMapping("/rebuild")
+    public R<String> rebuild(@RequestAttribute(value = "employee", required = false) Long employeeId,
+                             @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate date) {
+        if (employeeId == null) return R.error("只有管理端可以重建销售汇总");
+        if (date == null) return R.error("请指定日期");
+        if (!salesRollupReconciler.tryRebuild(date)) return R.error("销售汇总正在重建，请稍后再试");
+        log.info("员工{}重建了{}的销售汇总", employeeId, date);
+        return R.success("已重建" + date + "的销售汇总");
+    }
+}
@@ -1,6 +1,7 @@
 package com.itheima.reggie.controller;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.itheima.reggie.cache.MenuCacheInvalidator;
 import com.itheima.reggie.common.R;
 import com.itheima.reggie.dto.SetmealDto;
 import com.itheima.reggie.entity.Dish;
@@ -8,6 +9,7 @@ import com.itheima.reggie.entity.Setmeal;
 import com.itheima.reggie.entity.SetmealDish;
 import com.itheima.reggie.service.CategoryService;
 import com.itheima.reggie.service.DishService;
+import com.itheima.reggie.service.MenuSnapshotService;
 import com.itheima.reggie.service.SetmealDishService;
 import com.itheima.reggie.service.SetmealService;
 import lombok.extern.slf4j.Slf4j;
@@ -16,7 +18,9 @@ import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -32,34 +36,53 @@ public class SetmealController {
     private final SetmealService setmealService;
     private final DishService dishService;
     private final SetmealDishService setmealDishService;
+    private final MenuSnapshotService menuSnapshotService;
+    private final MenuCacheInvalidator menuCacheInvalidator;
 
-    public SetmealController(CategoryService categoryService, SetmealService setmealService, DishService dishService, SetmealDishService setmealDishService) {
+    public SetmealController(CategoryService categoryService, SetmealService setmealService, DishService dishService,
+                             SetmealDishService setmealDishService, MenuSnapshotService menuSnapshotService,
+                             MenuCacheInvalidator menuCacheInvalidator) {
         this.categoryService = categoryService;
         this.setmealService = setmealService;
         this.dishService = dishService;
         this.setmealDishService = setmealDishService;
+        this.menuSnapshotService = menuSnapshotService;
+        this.menuCacheInvalidator = menuCacheInvalidator;
     }
 
 
-    @CacheEvict(value = "setmealByCategory", allEntries = true)
+    /**
+     * 新增套餐，完成后只清除该分类下的套餐缓存
+     */
+    @CacheEvict(value = "setmealByCategory", key = "#setmealDto.categoryId")
     @PostMapping
     public R<String> save(@RequestBody SetmealDto setmealDto) {
         setmealService.saveWithDish(setmealDto);
+        menuSnapshotService.bumpVersion();
         return R.success("新增套餐成功");
     }
 
-    @CacheEvict(value = "setmealByCategory", allEntries = true)
     @DeleteMapping
     public R<String> delete(@RequestParam List<Long> ids) {
+        Set<Long> categoryIds = setmealService.getCategoryIDsBySetmealIDs(ids);
         // 需要删除 1.套餐信息 2.套餐与菜品的关系信息
         setmealService.deleteWithDish(ids);
+        menuCacheInvalidator.evictSetmealLists(categoryIds);
+        menuSnapshotService.bumpVersion();
         return R.success("删除套餐成功");
     }
 
-    @CacheEvict(value = "setmealByCategory", allEntries = true)
+    /**
+     * 修改套餐，套餐可能被移动到了其他分类，所以修改前后两个分类的缓存都需要清除
+     */
     @PutMapping
     public R<String> update(@RequestBody SetmealDto setmealDto) {
+        // 必须在修改之前查询原分类
+        Set<Long> categoryIds = setmealService.getCategoryIDsBySetmealIDs(Collections.singletonList(setmealDto.getId()));
+        categoryIds.add(setmealDto.getCategoryId());
         setmealService.updateWithDish(setmealDto);
+        menuCacheInvalidator.evictSetmealLists(categoryIds);
+        menuSnapshotService.bumpVersion();
         return R.success("修改套餐成功");
     }
 
@@ -69,10 +92,11 @@ public class SetmealController {
      * @param status 新的状态，1: 起售，0: 停售
      * @param ids    套餐id集合
      */
-    @CacheEvict(value = "setmealByCategory", allEntries = true)
     @PostMapping("/status/{status}")
     public R<String> updateStatus(@PathVariable Integer status, @RequestParam List<Long> ids) {
         setmealService.updateStatus(status, ids);
+        menuCacheInvalidator.evictSetmealLists(setmealService.getCategoryIDsBySetmealIDs(ids));
+        menuSnapshotService.bumpVersion();
         return R.success("修改成功");
     }
 
@@ -92,7 +116,7 @@ public class SetmealController {
     /**
      * 根据分类查询套餐
      */
-    @Cacheable(value = "setmealByCategory", key = "#conditionWrapper.categoryId")
+    @Cacheable(value = "setmealByCategory", key = "#conditionWrapper.categoryId", sync = true)
     @GetMapping("/list")
     public R<List<Setmeal>> list(Setmeal conditionWrapper) {
         List<Setmeal> setmealList = setmealService.getDataByCategoryIDAndStatusAsList(conditionWrapper);
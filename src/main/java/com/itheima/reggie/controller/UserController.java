@@ -1,6 +1,8 @@
 package com.itheima.reggie.controller;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.itheima.reggie.auth.LoginManager;
+import com.itheima.reggie.auth.LoginType;
 import com.itheima.reggie.common.R;
 import com.itheima.reggie.entity.User;
 import com.itheima.reggie.service.UserService;
@@ -13,7 +15,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -23,12 +26,14 @@ import java.util.concurrent.TimeUnit;
 public class UserController {
 
     private final UserService userService;
+    private final LoginManager loginManager;
 
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService, LoginManager loginManager) {
         this.userService = userService;
+        this.loginManager = loginManager;
     }
 
     /**
@@ -60,7 +65,7 @@ public class UserController {
      * @param args 前段传递的参数，包含手机号和验证码
      */
     @PostMapping("/login")
-    public R<User> login(@RequestBody Map<String, String> args, HttpSession session) {
+    public R<User> login(@RequestBody Map<String, String> args, HttpServletRequest request, HttpServletResponse response) {
         log.info(args.toString());
         //获取手机号
         String phone = args.get("phone");
@@ -81,7 +86,7 @@ public class UserController {
                 user.setStatus(1);
                 userService.save(user);
             }
-            session.setAttribute("user", user.getId());
+            loginManager.login(LoginType.USER, user.getId(), request, response);
             // 用户登录成功后，删除Redis中缓存的验证码
             stringRedisTemplate.delete(phone);
             return R.success(user);
@@ -90,8 +95,8 @@ public class UserController {
     }
 
     @PostMapping("/logout")
-    public R<String> logout(HttpSession session) {
-        session.invalidate();
+    public R<String> logout(HttpServletRequest request, HttpServletResponse response) {
+        loginManager.logout(LoginType.USER, request, response);
         return R.success("退出成功");
     }
 
@@ -0,0 +1,26 @@
+package com.itheima.reggie.dto;
+
+import com.itheima.reggie.entity.Category;
+import com.itheima.reggie.entity.Setmeal;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 用户端完整菜单：全部分类、在售菜品(含口味)与在售套餐
+ */
+@Data
+public class MenuDto implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * 菜单版本号，管理端每次修改分类、菜品、套餐后递增
+     */
+    private Long version;
+
+    private List<Category> categories;
+
+    private List<DishDto> dishes;
+
+    private List<Setmeal> setmeals;
+}
@@ -0,0 +1,31 @@
+package com.itheima.reggie.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 菜单快照：已经序列化好的菜单JSON及其版本号，直接写入响应即可，无需每次请求都重新序列化
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MenuSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long version;
+    /**
+     * 序列化后的 R&lt;MenuDto&gt; JSON
+     */
+    private byte[] body;
+
+    public String getETag() {
+        return toETag(version);
+    }
+
+    public static String toETag(long version) {
+        return "\"menu-" + version + "\"";
+    }
+}
@@ -0,0 +1,32 @@
+package com.itheima.reggie.dto;
+
+import com.itheima.reggie.entity.Orders;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 推送给管理端的订单事件
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderEvent {
+    /**
+     * 新订单，orders中为完整的订单信息
+     */
+    public static final String CREATED = "order-created";
+    /**
+     * 订单状态变化，orders中只有id与status
+     */
+    public static final String STATUS_CHANGED = "order-status-changed";
+
+    /**
+     * 事件id，所有节点共用一个递增序列，客户端断线重连时据此补发错过的事件
+     */
+    private Long id;
+    private String type;
+    private List<Orders> orders;
+}
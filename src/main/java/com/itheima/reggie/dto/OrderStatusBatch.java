@@ -0,0 +1,17 @@
+package com.itheima.reggie.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量修改订单状态的请求
+ */
+@Data
+public class OrderStatusBatch {
+    private List<Long> ids;
+    /**
+     * 目标状态
+     */
+    private Integer status;
+}
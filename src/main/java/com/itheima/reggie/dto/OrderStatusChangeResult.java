@@ -0,0 +1,18 @@
+package com.itheima.reggie.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 单个订单的状态修改结果
+ */
+@Data
+@AllArgsConstructor
+public class OrderStatusChangeResult {
+    private Long id;
+    private boolean success;
+    /**
+     * 修改失败的原因
+     */
+    private String msg;
+}
@@ -0,0 +1,33 @@
+package com.itheima.reggie.dto;
+
+import com.itheima.reggie.entity.OrderDetail;
+import com.itheima.reggie.entity.Orders;
+import com.itheima.reggie.entity.ShoppingCart;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 已经校验并组装完成、等待写入数据库的订单
+ */
+@Data
+@NoArgsConstructor
+public class PendingOrder {
+    private Orders orders;
+    private List<OrderDetail> orderDetails;
+    /**
+     * 下单时读取到的购物车数据，订单写入后删除这些数据(而不是删除用户的整个购物车，避免误删下单后新加入的商品)
+     */
+    private List<ShoppingCart> shoppingCarts;
+    /**
+     * 购物车数据是否已经在接收订单时删除(异步下单)，为true时写入订单时不再删除
+     */
+    private boolean cartRemoved;
+
+    public PendingOrder(Orders orders, List<OrderDetail> orderDetails, List<ShoppingCart> shoppingCarts) {
+        this.orders = orders;
+        this.orderDetails = orderDetails;
+        this.shoppingCarts = shoppingCarts;
+    }
+}
@@ -0,0 +1,19 @@
+package com.itheima.reggie.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * 分类的销售统计
+ */
+@Data
+public class SalesCategoryStat {
+    private Long categoryId;
+    private String categoryName;
+    /**
+     * 份数
+     */
+    private Long quantity;
+    private BigDecimal amount;
+}
@@ -0,0 +1,24 @@
+package com.itheima.reggie.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * 菜品或套餐的销售统计
+ */
+@Data
+public class SalesItemStat {
+    /**
+     * 1菜品，2套餐
+     */
+    private Integer itemType;
+    private Long itemId;
+    private String name;
+    private Long categoryId;
+    /**
+     * 份数
+     */
+    private Long quantity;
+    private BigDecimal amount;
+}
@@ -0,0 +1,18 @@
+package com.itheima.reggie.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * 某一天或某个小时的销售统计
+ */
+@Data
+public class SalesPeriodStat {
+    /**
+     * 日期(yyyy-MM-dd)或整点(yyyy-MM-dd HH:00)
+     */
+    private String period;
+    private Long orderCount;
+    private BigDecimal amount;
+}
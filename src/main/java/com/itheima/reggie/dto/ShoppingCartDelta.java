@@ -0,0 +1,17 @@
+package com.itheima.reggie.dto;
+
+import com.itheima.reggie.entity.ShoppingCart;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 批量修改购物车时，一个商品的数量变化
+ */
+@EqualsAndHashCode(callSuper = true)
+@Data
+public class ShoppingCartDelta extends ShoppingCart {
+    /**
+     * 数量的变化，正数表示增加，负数表示减少
+     */
+    private Integer delta;
+}
@@ -1,6 +1,8 @@
 package com.itheima.reggie.filter;
 
 import com.alibaba.fastjson.JSON;
+import com.itheima.reggie.auth.LoginManager;
+import com.itheima.reggie.auth.LoginPrincipal;
 import com.itheima.reggie.common.BaseContext;
 import com.itheima.reggie.common.R;
 import com.itheima.reggie.common.UserInfo;
@@ -17,12 +19,14 @@ import java.io.IOException;
 /**
  * 检查用户是否已经登录
  */
-@WebFilter(urlPatterns = "/*")
+@WebFilter(urlPatterns = "/*", asyncSupported = true) // 订单事件推送(SseEmitter)需要异步请求，经过的过滤器都必须支持
 @Slf4j
 public class LoginCheckFilter implements Filter {
 
     @Autowired
     private UserInfo userinfo;
+    @Autowired
+    private LoginManager loginManager;
     //Spring 提供的工具类，用于匹配路径，支持通配符
     public static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
 
@@ -38,22 +42,19 @@ public class LoginCheckFilter implements Filter {
                 "/front/**", // 静态资源
                 "/user/login", // 用户端登录
                 "/user/sendMsg",
+                "/actuator/health/**", // 健康检查(存活、就绪探针)
         };
         if (requestIsExcluded(requestURI, excludedUrls)) {
             filterChain.doFilter(request, response);
             return;
         }
-        // 若管理端用户已登录(Session中存在对应属性),则放行
-        if (request.getSession().getAttribute("employee") != null) {
-            BaseContext.setCurrentId((Long) request.getSession().getAttribute("employee"));
-            userinfo.setUserId((Long) request.getSession().getAttribute("employee"));
-            filterChain.doFilter(request, response);
-            return;
-        }
-        // 若客户端用户已登录(Session中存在对应属性),则放行
-        if (request.getSession().getAttribute("user") != null) {
-            BaseContext.setCurrentId((Long) request.getSession().getAttribute("user"));
-            userinfo.setUserId((Long) request.getSession().getAttribute("user"));
+        // 若管理端用户或客户端用户已登录(管理端优先),则放行；登录状态的保存方式见LoginManager
+        LoginPrincipal principal = loginManager.authenticate(request, response);
+        if (principal != null) {
+            BaseContext.setCurrentId(principal.getId());
+            userinfo.setUserId(principal.getId());
+            // 供Controller通过@RequestAttribute获取，与登录状态的保存方式无关
+            request.setAttribute(principal.getType().getAttributeName(), principal.getId());
             filterChain.doFilter(request, response);
             return;
         }
@@ -0,0 +1,76 @@
+package com.itheima.reggie.idgen;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按天递增的订单号生成器，订单号格式为 yyyyMMdd + 至少6位序号，例如 20211018000123
+ * <p>
+ * 序号通过Redis的INCRBY按号段分配：每个节点一次申请segmentSize个序号，用完后再申请下一段，
+ * 因此不需要每个订单都访问一次Redis；各节点的号段互不重叠，订单号不会重复，但不保证严格按下单顺序递增。
+ * 节点重启时未用完的号段会被丢弃，订单号会出现空缺
+ */
+public class DailyOrderNumberGenerator {
+
+    private static final String SEQUENCE_KEY_PREFIX = "reggie:order:number:";
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long segmentSize;
+    private volatile Segment segment;
+
+    /**
+     * @param stringRedisTemplate 用于分配号段
+     * @param segmentSize         每次申请的序号个数
+     */
+    public DailyOrderNumberGenerator(StringRedisTemplate stringRedisTemplate, long segmentSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * 生成下一个订单号
+     */
+    public String next() {
+        LocalDate today = LocalDate.now();
+        while (true) {
+            Segment current = segment;
+            if (current != null && current.date.equals(today)) {
+                long sequence = current.next.getAndIncrement();
+                if (sequence <= current.max) return current.prefix + String.format("%06d", sequence);
+            }
+            // 号段用完或已经到了第二天，只允许一个线程申请新的号段，其他线程申请完成后重试
+            synchronized (this) {
+                if (segment == current) segment = allocate(today);
+            }
+        }
+    }
+
+    private Segment allocate(LocalDate date) {
+        String datePrefix = DATE_FORMATTER.format(date);
+        String key = SEQUENCE_KEY_PREFIX + datePrefix;
+        Long max = stringRedisTemplate.opsForValue().increment(key, segmentSize);
+        if (max == null) throw new IllegalStateException("申请订单号段失败");
+        // 序号只在当天使用，保留两天以免跨天时被提前删除
+        if (max == segmentSize) stringRedisTemplate.expire(key, Duration.ofDays(2));
+        return new Segment(date, datePrefix, max - segmentSize + 1, max);
+    }
+
+    private static final class Segment {
+        private final LocalDate date;
+        private final String prefix;
+        private final AtomicLong next;
+        private final long max;
+
+        private Segment(LocalDate date, String prefix, long first, long max) {
+            this.date = date;
+            this.prefix = prefix;
+            this.next = new AtomicLong(first);
+            this.max = max;
+        }
+    }
+}
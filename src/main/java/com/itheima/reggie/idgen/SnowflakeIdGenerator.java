@@ -0,0 +1,88 @@
+package com.itheima.reggie.idgen;
+
+import com.baomidou.mybatisplus.core.incrementer.IdentifierGenerator;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁的雪花算法id生成器
+ * <p>
+ * id结构：1位符号位(始终为0) + 41位毫秒时间戳(相对于EPOCH) + 10位节点id + 12位序列号。
+ * 与MyBatis-Plus默认的IdWorker相比：
+ * <ul>
+ *     <li>节点id由配置显式指定(project.id.worker-id)，不再根据MAC地址与进程id推算，避免多个节点推算出相同的节点id</li>
+ *     <li>时间戳与序列号保存在同一个AtomicLong中，通过CAS更新，多线程竞争时不需要加锁</li>
+ *     <li>时钟小幅回拨(不超过maxBackwardMillis)时沿用上一次的时间戳继续分配，不会生成重复id；回拨过大时抛出异常</li>
+ * </ul>
+ * 注册为Spring Bean后，MyBatis-Plus的ASSIGN_ID主键也会使用该生成器
+ * <p>
+ * EPOCH与IdWorker相同，节点id与序列号也同样占22位，因此同一时刻生成的id与IdWorker的id大小一致，
+ * 切换生成器后新生成的id仍然大于表中已有的id，按id排序、游标分页的结果不受影响
+ */
+@Slf4j
+public class SnowflakeIdGenerator implements IdentifierGenerator {
+
+    /**
+     * 与MyBatis-Plus的IdWorker相同(2010-11-04 09:42:54.657 UTC)，不能晚于该时间，否则新id会小于已有的id
+     */
+    private static final long EPOCH = 1288834974657L;
+    private static final int WORKER_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long workerId;
+    private final long maxBackwardMillis;
+    /**
+     * 高位为上一次分配id时使用的时间戳(相对于EPOCH)，低12位为该毫秒内已经使用的序列号
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * @param workerId          节点id，集群中每个节点必须不同，取值范围 0 ~ 1023
+     * @param maxBackwardMillis 允许的时钟回拨毫秒数
+     */
+    public SnowflakeIdGenerator(long workerId, long maxBackwardMillis) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("节点id必须在0到" + MAX_WORKER_ID + "之间，当前为:" + workerId);
+        }
+        this.workerId = workerId;
+        this.maxBackwardMillis = maxBackwardMillis;
+        log.info("雪花算法id生成器节点id:{}", workerId);
+    }
+
+    @Override
+    public Long nextId(Object entity) {
+        return nextId();
+    }
+
+    public long nextId() {
+        while (true) {
+            long last = state.get();
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            long now = System.currentTimeMillis() - EPOCH;
+            long next;
+            if (now > lastTimestamp) {
+                // 进入新的毫秒，序列号从0开始
+                next = now << SEQUENCE_BITS;
+            } else {
+                // 同一毫秒内，或时钟发生了回拨：沿用上一次的时间戳继续递增序列号
+                if (lastTimestamp - now > maxBackwardMillis) {
+                    throw new IllegalStateException("时钟回拨了" + (lastTimestamp - now) + "ms，超过允许的" + maxBackwardMillis + "ms，拒绝生成id");
+                }
+                if ((last & SEQUENCE_MASK) == SEQUENCE_MASK) {
+                    // 该毫秒内的序列号已经用完，等待时钟进入下一毫秒
+                    Thread.yield();
+                    continue;
+                }
+                next = last + 1;
+            }
+            if (state.compareAndSet(last, next)) {
+                return ((next >>> SEQUENCE_BITS) << (WORKER_ID_BITS + SEQUENCE_BITS))
+                        | (workerId << SEQUENCE_BITS)
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+}
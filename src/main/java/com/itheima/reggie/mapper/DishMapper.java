@@ -1,9 +1,22 @@
 package com.itheima.reggie.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.itheima.reggie.entity.Dish;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 
 @Mapper
 public interface DishMapper extends BaseMapper<Dish> {
+
+    /**
+     * 通过name列上的全文索引搜索，按相关度分页返回id
+     *
+     * @param page   分页参数
+     * @param phrase 由FullTextSearchUtils.toPhrase转换后的短语
+     */
+    @Select("SELECT id FROM dish WHERE is_deleted = 0 AND MATCH(name) AGAINST(#{phrase} IN BOOLEAN MODE) " +
+            "ORDER BY MATCH(name) AGAINST(#{phrase} IN BOOLEAN MODE) DESC, update_time DESC")
+    Page<Long> selectIdPageByName(Page<Long> page, @Param("phrase") String phrase);
 }
@@ -3,8 +3,23 @@ package com.itheima.reggie.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.itheima.reggie.entity.OrderDetail;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.Collection;
+import java.util.List;
 
 @Mapper
 public interface OrderDetailMapper extends BaseMapper<OrderDetail> {
 
-}
\ No newline at end of file
+    /**
+     * 在归档表中查询订单明细
+     *
+     * @param orderIds 订单id集合，不能为空
+     */
+    @Select("<script>" +
+            "SELECT * FROM order_detail_archive WHERE order_id IN " +
+            "<foreach collection='orderIds' item='orderId' open='(' separator=',' close=')'>#{orderId}</foreach>" +
+            "</script>")
+    List<OrderDetail> selectArchivedByOrderIds(@Param("orderIds") Collection<Long> orderIds);
+}
@@ -1,10 +1,38 @@
 package com.itheima.reggie.mapper;
 
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.core.toolkit.Constants;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.itheima.reggie.entity.Orders;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 
 @Mapper
 public interface OrderMapper extends BaseMapper<Orders> {
 
-}
\ No newline at end of file
+    /**
+     * 同时在订单表与归档表中分页查询订单，按(order_time, id)倒序排列
+     * <p>
+     * 查询条件分别作用在两张表上，各自使用自己的索引(订单表还可以进行分区裁剪)，而不是先合并两张表再过滤；
+     * 每张表只按索引顺序读取前limit条，合并后最多2 * limit条再排序分页，不会读取两张表中所有符合条件的数据
+     *
+     * @param page         分页参数，不能查询总条数(总条数见countWithArchive)
+     * @param queryWrapper 查询条件，不能包含分组与排序条件
+     * @param limit        每张表最多读取的条数，即本页最后一条的位置(offset + size)
+     */
+    @Select("SELECT * FROM ((SELECT * FROM orders ${ew.customSqlSegment} ORDER BY order_time DESC, id DESC LIMIT #{limit}) " +
+            "UNION ALL (SELECT * FROM orders_archive ${ew.customSqlSegment} ORDER BY order_time DESC, id DESC LIMIT #{limit})) t " +
+            "ORDER BY order_time DESC, id DESC")
+    Page<Orders> selectPageWithArchive(Page<Orders> page, @Param(Constants.WRAPPER) Wrapper<Orders> queryWrapper,
+                                       @Param("limit") long limit);
+
+    /**
+     * 订单表与归档表中符合条件的订单总数
+     *
+     * @param queryWrapper 查询条件，不能包含分组与排序条件
+     */
+    @Select("SELECT (SELECT COUNT(*) FROM orders ${ew.customSqlSegment}) + (SELECT COUNT(*) FROM orders_archive ${ew.customSqlSegment})")
+    long countWithArchive(@Param(Constants.WRAPPER) Wrapper<Orders> queryWrapper);
+}
@@ -3,7 +3,25 @@ package com.itheima.reggie.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.itheima.reggie.entity.SetmealDish;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.Collection;
+import java.util.List;
 
 @Mapper
 public interface SetmealDishMapper extends BaseMapper<SetmealDish> {
+
+    /**
+     * 通过套餐菜品关系表与套餐表的连接查询，一次性找出包含指定菜品的所有在售套餐名称
+     * (依赖setmeal_dish表上dish_id列的索引)
+     *
+     * @param dishIds 菜品id集合，不能为空
+     */
+    @Select("<script>" +
+            "SELECT DISTINCT s.name FROM setmeal_dish sd JOIN setmeal s ON s.id = sd.setmeal_id " +
+            "WHERE s.status = 1 AND s.is_deleted = 0 AND sd.is_deleted = 0 AND sd.dish_id IN " +
+            "<foreach collection='dishIds' item='dishId' open='(' separator=',' close=')'>#{dishId}</foreach>" +
+            "</script>")
+    List<String> selectOnSaleSetmealNamesByDishIds(@Param("dishIds") Collection<Long> dishIds);
 }
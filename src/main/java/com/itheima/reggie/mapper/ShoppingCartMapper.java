@@ -1,10 +1,80 @@
 package com.itheima.reggie.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.itheima.reggie.dto.ShoppingCartDelta;
 import com.itheima.reggie.entity.ShoppingCart;
-import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.*;
 
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 购物车表上有唯一索引(user_id, item_key)，item_key是由dish_id或setmeal_id生成的列(dish:{菜品id}或setmeal:{套餐id})
+ * <p>
+ * 修改数量的语句都是一条带条件的语句，直接在数据库中完成加减，不需要先查询再写回，并发修改同一个商品时不会丢失更新
+ */
 @Mapper
 public interface ShoppingCartMapper extends BaseMapper<ShoppingCart> {
 
+    /**
+     * 商品的数量加1，购物车中没有该商品时插入一条数量为1的数据
+     *
+     * @param item 商品信息，id、userId、createTime已经设置
+     * @return 影响的行数
+     */
+    @Insert("INSERT INTO shopping_cart (id, name, image, user_id, dish_id, setmeal_id, dish_flavor, number, amount, create_time) " +
+            "VALUES (#{id}, #{name}, #{image}, #{userId}, #{dishId}, #{setmealId}, #{dishFlavor}, 1, #{amount}, #{createTime}) " +
+            "ON DUPLICATE KEY UPDATE number = number + 1")
+    int increase(ShoppingCart item);
+
+    /**
+     * 商品的数量减1，数量已经为0时不修改
+     *
+     * @param itemKey 与item_key列的生成规则一致
+     * @return 影响的行数，购物车中没有该商品时为0
+     */
+    @Update("UPDATE shopping_cart SET number = number - 1 WHERE user_id = #{userId} AND item_key = #{itemKey} AND number > 0")
+    int decrease(@Param("userId") Long userId, @Param("itemKey") String itemKey);
+
+    /**
+     * 删除数量已经减到0的商品；删除时仍然检查数量，期间被再次加1的商品不会被误删
+     */
+    @Delete("DELETE FROM shopping_cart WHERE user_id = #{userId} AND item_key = #{itemKey} AND number <= 0")
+    int deleteIfEmpty(@Param("userId") Long userId, @Param("itemKey") String itemKey);
+
+    /**
+     * 查询购物车中的一个商品，通过唯一索引定位
+     */
+    @Select("SELECT id, name, image, user_id, dish_id, setmeal_id, dish_flavor, number, amount, create_time " +
+            "FROM shopping_cart WHERE user_id = #{userId} AND item_key = #{itemKey}")
+    ShoppingCart selectByItemKey(@Param("userId") Long userId, @Param("itemKey") String itemKey);
+
+    /**
+     * 多个商品的数量分别增加，购物车中没有的商品插入一条数据，一条语句完成
+     *
+     * @param items 商品信息，id、userId、createTime已经设置，delta为增加的数量
+     */
+    @Insert("<script>" +
+            "INSERT INTO shopping_cart (id, name, image, user_id, dish_id, setmeal_id, dish_flavor, number, amount, create_time) VALUES " +
+            "<foreach collection='items' item='item' separator=','>" +
+            "(#{item.id}, #{item.name}, #{item.image}, #{item.userId}, #{item.dishId}, #{item.setmealId}, " +
+            "#{item.dishFlavor}, #{item.delta}, #{item.amount}, #{item.createTime})" +
+            "</foreach> " +
+            "ON DUPLICATE KEY UPDATE number = number + VALUES(number)" +
+            "</script>")
+    int increaseBatch(@Param("items") List<ShoppingCartDelta> items);
+
+    /**
+     * 多个商品的数量分别减少，一条语句完成；减到0及以下的数据需要再删除
+     *
+     * @param decreases item_key -> 减少的数量，不能为空
+     */
+    @Update("<script>" +
+            "UPDATE shopping_cart SET number = number - CASE item_key " +
+            "<foreach collection='decreases' index='itemKey' item='quantity'>WHEN #{itemKey} THEN #{quantity} </foreach>" +
+            "ELSE 0 END " +
+            "WHERE user_id = #{userId} AND item_key IN " +
+            "<foreach collection='decreases' index='itemKey' open='(' separator=',' close=')'>#{itemKey}</foreach>" +
+            "</script>")
+    int decreaseBatch(@Param("userId") Long userId, @Param("decreases") Map<String, Integer> decreases);
 }
@@ -0,0 +1,75 @@
+package com.itheima.reggie.order;
+
+import com.alibaba.fastjson.JSON;
+import com.itheima.reggie.common.R;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * 下单接口的幂等保护
+ * <p>
+ * 客户端在请求头Idempotency-Key中携带本次下单的唯一标识，超时重试时使用同一个标识。
+ * 第一次请求通过Redis的SET NX占用该标识并执行下单，完成后将响应结果保存在该标识下；
+ * 之后使用同一标识的请求直接返回保存的结果，不会再访问数据库，也不会重复下单。
+ * 下单抛出异常时删除该标识，客户端可以使用同一标识重新下单
+ */
+@Slf4j
+@Component
+public class IdempotentSubmitGuard {
+
+    public static final String HEADER_NAME = "Idempotency-Key";
+    private static final String KEY_PREFIX = "reggie:idempotency:order-submit:";
+    private static final String PROCESSING = "PROCESSING";
+    private static final int MAX_KEY_LENGTH = 64;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${project.order.idempotency.ttl-seconds}")
+    private long ttlSeconds;
+
+    public IdempotentSubmitGuard(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 以幂等的方式执行下单
+     *
+     * @param userId         当前用户id，不同用户的标识互不影响
+     * @param idempotencyKey 客户端提供的标识，为空时不进行幂等保护
+     * @param action         下单操作
+     * @return 下单结果，或第一次请求保存的结果
+     */
+    public R<String> execute(Long userId, String idempotencyKey, Supplier<R<String>> action) {
+        if (!StringUtils.hasText(idempotencyKey)) return action.get();
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) return R.error(HEADER_NAME + "过长");
+
+        String key = KEY_PREFIX + userId + ":" + idempotencyKey;
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        Boolean acquired = stringRedisTemplate.opsForValue().setIfAbsent(key, PROCESSING, ttl);
+        if (!Boolean.TRUE.equals(acquired)) {
+            String saved = stringRedisTemplate.opsForValue().get(key);
+            // 标识恰好在两次操作之间过期时，按重复请求处理，让客户端稍后重试
+            if (saved == null || PROCESSING.equals(saved)) return R.error("订单正在处理中，请勿重复提交");
+            log.info("重复的下单请求，返回第一次请求的结果，userId:{}，key:{}", userId, idempotencyKey);
+            @SuppressWarnings("unchecked")
+            R<String> result = JSON.parseObject(saved, R.class);
+            return result;
+        }
+
+        R<String> result;
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            stringRedisTemplate.delete(key);
+            throw e;
+        }
+        stringRedisTemplate.opsForValue().set(key, JSON.toJSONString(result), ttl);
+        return result;
+    }
+}
@@ -0,0 +1,156 @@
+package com.itheima.reggie.order;
+
+import com.itheima.reggie.common.JobLease;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 订单归档任务：将已经完成或取消、且下单时间早于指定天数的订单及其明细，从orders/order_detail移动到orders_archive/order_detail_archive
+ * <p>
+ * 每批订单的复制与删除在同一个事务中完成，复制使用INSERT IGNORE，因此任务在任何时刻中断后都可以直接重新执行，
+ * 不会丢失数据也不会重复归档；每批之间暂停一段时间，且在用餐高峰时段不执行，避免影响正常下单。
+ * 每个节点都会触发归档任务，通过 {@link JobLease} 保证同一时间只有一个节点执行
+ * <p>
+ * 同时负责判断一次订单查询是否需要包含归档表
+ */
+@Slf4j
+@Component
+public class OrderArchiver {
+
+    private static final DateTimeFormatter QUERY_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String JOB_NAME = "order-archive";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JobLease jobLease;
+
+    @Value("${project.order.archive.enabled}")
+    private boolean enabled;
+    @Value("${project.order.archive.min-age-days}")
+    private int minAgeDays;
+    @Value("${project.order.archive.batch-size}")
+    private int batchSize;
+    @Value("${project.order.archive.pause-millis}")
+    private long pauseMillis;
+    @Value("${project.order.archive.peak-hours}")
+    private String peakHoursConfig;
+    @Value("${project.order.archive.lease-minutes}")
+    private long leaseMinutes;
+
+    /**
+     * 高峰时段，每个元素为[开始时间, 结束时间]
+     */
+    private final List<LocalTime[]> peakHours = new ArrayList<>();
+
+    public OrderArchiver(NamedParameterJdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, JobLease jobLease) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.jobLease = jobLease;
+    }
+
+    @PostConstruct
+    public void init() {
+        // 格式: 10:30-13:30,16:30-19:30
+        for (String range : StringUtils.commaDelimitedListToStringArray(peakHoursConfig)) {
+            String[] times = range.trim().split("-");
+            peakHours.add(new LocalTime[]{LocalTime.parse(times[0].trim()), LocalTime.parse(times[1].trim())});
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${project.order.archive.interval-millis}")
+    public void archive() {
+        if (!enabled) return;
+        try {
+            jobLease.runExclusively(JOB_NAME, Duration.ofMinutes(leaseMinutes), this::doArchive);
+        } catch (Exception e) {
+            log.error("订单归档失败", e);
+        }
+    }
+
+    private void doArchive() {
+        long start = System.currentTimeMillis();
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(minAgeDays);
+        int archived = 0;
+        try {
+            while (!isPeakHour(LocalTime.now())) {
+                // 依赖order_time上的索引，从最早的订单开始归档
+                List<Long> ids = jdbcTemplate.queryForList(
+                        "SELECT id FROM orders WHERE status IN (4, 5) AND order_time < :cutoff " +
+                                "ORDER BY order_time, id LIMIT :limit",
+                        new MapSqlParameterSource("cutoff", cutoff).addValue("limit", batchSize),
+                        Long.class);
+                if (ids.isEmpty()) break;
+                transactionTemplate.executeWithoutResult(status -> moveBatch(ids));
+                archived += ids.size();
+                if (ids.size() < batchSize) break;
+                Thread.sleep(pauseMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("订单归档失败，下次执行时将从中断处继续", e);
+        }
+        if (archived > 0) {
+            log.info("本次归档订单{}个，耗时{}ms", archived, System.currentTimeMillis() - start);
+        }
+    }
+
+    private void moveBatch(List<Long> ids) {
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", ids);
+        jdbcTemplate.update("INSERT IGNORE INTO order_detail_archive SELECT * FROM order_detail WHERE order_id IN (:ids)", params);
+        jdbcTemplate.update("INSERT IGNORE INTO orders_archive SELECT * FROM orders WHERE id IN (:ids)", params);
+        jdbcTemplate.update("DELETE FROM order_detail WHERE order_id IN (:ids)", params);
+        jdbcTemplate.update("DELETE FROM orders WHERE id IN (:ids)", params);
+    }
+
+    private boolean isPeakHour(LocalTime now) {
+        for (LocalTime[] range : peakHours) {
+            if (!now.isBefore(range[0]) && now.isBefore(range[1])) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 判断订单查询是否需要包含归档表：按订单号查询，或查询的开始时间早于归档时间线时需要
+     * <p>
+     * 不指定开始时间时只查询订单表中的近期订单
+     *
+     * @param number    订单号
+     * @param beginTime 开始时间，格式为 yyyy-MM-dd HH:mm:ss
+     */
+    public boolean isArchiveQueryNeeded(String number, String beginTime) {
+        if (!enabled) return false;
+        if (StringUtils.hasText(number)) return true;
+        if (!StringUtils.hasText(beginTime)) return false;
+        try {
+            return isArchiveQueryNeeded(LocalDateTime.parse(beginTime.trim(), QUERY_TIME_FORMATTER));
+        } catch (DateTimeParseException e) {
+            // 无法判断时同时查询归档表，保证结果完整
+            return true;
+        }
+    }
+
+    /**
+     * 判断查询范围到达指定的下单时间时是否需要包含归档表：只有早于归档时间线的订单才可能已经被归档
+     *
+     * @param orderTime 查询范围中最早的下单时间
+     */
+    public boolean isArchiveQueryNeeded(LocalDateTime orderTime) {
+        return enabled && orderTime.isBefore(LocalDateTime.now().minusDays(minAgeDays));
+    }
+}
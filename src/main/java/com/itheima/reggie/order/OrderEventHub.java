@@ -0,0 +1,313 @@
+package com.itheima.reggie.order;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.itheima.reggie.common.JacksonObjectMapper;
+import com.itheima.reggie.dto.OrderEvent;
+import com.itheima.reggie.entity.Orders;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 订单事件推送(Server-Sent Events)
+ * <p>
+ * 订单写入或状态修改的事务提交后，事件通过Redis发布订阅广播到所有节点，每个节点再推送给连接到自己的管理端页面，
+ * 管理端不需要再轮询订单列表。
+ * <ul>
+ *     <li>每个连接有一个有界的发送队列，由发送线程逐个发送；客户端接收过慢导致队列已满时直接断开该连接，
+ *     不会因为一个慢客户端占用大量内存或拖慢其他连接</li>
+ *     <li>每个节点在内存中保留最近的事件，客户端重连时(EventSource会自动携带Last-Event-ID)补发错过的事件；
+ *     错过的事件已不在内存中时，发送reset事件，由客户端重新查询订单列表</li>
+ * </ul>
+ * 事件id由Redis INCR生成，不同节点几乎同时产生的事件到达的顺序可能与id顺序不一致，极少数情况下重连后会漏掉这类事件，
+ * 管理端重新查询列表即可恢复
+ */
+@Slf4j
+@Component
+public class OrderEventHub implements MessageListener {
+
+    public static final String CHANNEL = "reggie:order:events";
+    private static final String SEQUENCE_KEY = "reggie:order:events:seq";
+    private static final String RESET = "reset";
+    /**
+     * 放入发送队列的心跳标记
+     */
+    private static final BufferedEvent HEARTBEAT = new BufferedEvent(null, null, null);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper = new JacksonObjectMapper();
+
+    @Value("${project.order.events.enabled}")
+    private boolean enabled;
+    @Value("${project.order.events.buffer-size}")
+    private int bufferSize;
+    @Value("${project.order.events.connection-queue-size}")
+    private int connectionQueueSize;
+    @Value("${project.order.events.sender-threads}")
+    private int senderThreads;
+    @Value("${project.order.events.timeout-minutes}")
+    private long timeoutMinutes;
+
+    /**
+     * 最近的事件，读写都需要对其加锁；新连接的注册与补发也在同一把锁内完成，保证事件不会遗漏或重复
+     */
+    private final Deque<BufferedEvent> recentEvents = new ArrayDeque<>();
+    private long lastEventId;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private ExecutorService sender;
+    private Counter droppedCounter;
+
+    public OrderEventHub(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer redisMessageListenerContainer,
+                         MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisMessageListenerContainer = redisMessageListenerContainer;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        AtomicInteger threadNumber = new AtomicInteger();
+        sender = Executors.newFixedThreadPool(senderThreads,
+                runnable -> new Thread(runnable, "order-event-sender-" + threadNumber.incrementAndGet()));
+        Gauge.builder("reggie.order.events.connections", connections, Set::size)
+                .description("订阅订单事件的连接数")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("reggie.order.events.dropped")
+                .description("因发送队列已满被断开的连接数")
+                .register(meterRegistry);
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!enabled) return;
+        connections.forEach(Connection::close);
+        sender.shutdown();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 在当前事务提交后发布事件，事务回滚时不发布；没有事务时立即发布
+     *
+     * @param type   事件类型
+     * @param orders 相关的订单
+     */
+    public void publishAfterCommit(String type, List<Orders> orders) {
+        if (!enabled || orders.isEmpty()) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(type, orders);
+                }
+            });
+        } else {
+            publish(type, orders);
+        }
+    }
+
+    /**
+     * 发布失败不影响订单本身，管理端重新查询列表即可看到
+     */
+    private void publish(String type, List<Orders> orders) {
+        try {
+            Long id = stringRedisTemplate.opsForValue().increment(SEQUENCE_KEY);
+            stringRedisTemplate.convertAndSend(CHANNEL, objectMapper.writeValueAsString(new OrderEvent(id, type, orders)));
+        } catch (Exception e) {
+            log.warn("发布订单事件失败，type:{}，订单数:{}", type, orders.size(), e);
+        }
+    }
+
+    /**
+     * 收到任意节点发布的事件
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        BufferedEvent event;
+        try {
+            // 每个事件只序列化一次，所有连接共用
+            OrderEvent orderEvent = objectMapper.readValue(message.getBody(), OrderEvent.class);
+            event = new BufferedEvent(orderEvent.getId(), orderEvent.getType(), objectMapper.writeValueAsString(orderEvent.getOrders()));
+        } catch (Exception e) {
+            log.warn("无法解析订单事件", e);
+            return;
+        }
+        synchronized (recentEvents) {
+            recentEvents.addLast(event);
+            if (recentEvents.size() > bufferSize) recentEvents.removeFirst();
+            lastEventId = Math.max(lastEventId, event.id);
+            connections.forEach(connection -> connection.offer(event));
+        }
+    }
+
+    /**
+     * 订阅订单事件
+     *
+     * @param lastEventId 客户端收到的最后一个事件id，不为空时先补发之后的事件
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(timeoutMinutes));
+        Connection connection = new Connection(emitter);
+        emitter.onCompletion(() -> connections.remove(connection));
+        emitter.onTimeout(connection::close);
+        emitter.onError(e -> connection.close());
+        synchronized (recentEvents) {
+            connections.add(connection);
+            Long resumeFrom = parseEventId(lastEventId);
+            if (resumeFrom != null && resumeFrom < this.lastEventId) replay(connection, resumeFrom);
+        }
+        return emitter;
+    }
+
+    private void replay(Connection connection, long resumeFrom) {
+        BufferedEvent oldest = recentEvents.peekFirst();
+        List<BufferedEvent> missed = new ArrayList<>();
+        for (BufferedEvent event : recentEvents) {
+            if (event.id > resumeFrom) missed.add(event);
+        }
+        // 错过的事件已被淘汰，或一次补发不完
+        if (oldest == null || oldest.id > resumeFrom + 1 || missed.size() > connectionQueueSize) {
+            connection.offer(new BufferedEvent(null, RESET, ""));
+            return;
+        }
+        missed.forEach(connection::offer);
+    }
+
+    private static Long parseEventId(String eventId) {
+        if (eventId == null) return null;
+        try {
+            return Long.parseLong(eventId.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 定时发送心跳，避免空闲连接被代理断开，同时及时发现已经断开的连接
+     */
+    @Scheduled(fixedDelayString = "${project.order.events.heartbeat-millis}")
+    public void heartbeat() {
+        if (!enabled) return;
+        connections.forEach(connection -> connection.offer(HEARTBEAT));
+    }
+
+    private class Connection {
+        private final SseEmitter emitter;
+        private final BlockingQueue<BufferedEvent> queue = new ArrayBlockingQueue<>(connectionQueueSize);
+        /**
+         * 同一时间只有一个发送线程处理该连接，保证事件按顺序发送
+         */
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+
+        Connection(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void offer(BufferedEvent event) {
+            if (closed) return;
+            if (!queue.offer(event)) {
+                droppedCounter.increment();
+                log.info("订单事件连接的发送队列已满，断开连接");
+                close();
+                return;
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    sender.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    draining.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                BufferedEvent event;
+                while (!closed && (event = queue.poll()) != null) {
+                    send(event);
+                }
+            } catch (Exception e) {
+                // 客户端已断开
+                close();
+            } finally {
+                draining.set(false);
+            }
+            // 释放标记与新事件入队之间的竞争
+            if (!closed && !queue.isEmpty()) scheduleDrain();
+        }
+
+        private void send(BufferedEvent event) throws Exception {
+            if (event == HEARTBEAT) {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            } else if (event.id == null) {
+                emitter.send(SseEmitter.event().name(event.type).data(event.data));
+            } else {
+                emitter.send(SseEmitter.event().id(String.valueOf(event.id)).name(event.type).data(event.data));
+            }
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            connections.remove(this);
+            queue.clear();
+            try {
+                emitter.complete();
+            } catch (Exception ignored) {
+                // 连接已经结束
+            }
+        }
+    }
+
+    /**
+     * 已经序列化好的事件
+     */
+    private static class BufferedEvent {
+        private final Long id;
+        private final String type;
+        /**
+         * 事件中订单列表的JSON
+         */
+        private final String data;
+
+        BufferedEvent(Long id, String type, String data) {
+            this.id = id;
+            this.type = type;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.itheima.reggie.order;
+
+import com.itheima.reggie.common.JobLease;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 订单表按月分区的维护任务
+ * <p>
+ * orders表按order_time进行RANGE COLUMNS分区，每个月一个分区(p202110表示2021年10月)，最后是兜底的pmax分区。
+ * 按下单时间范围查询时，MySQL只会扫描与查询范围有交集的分区(分区裁剪)。
+ * <ul>
+ *     <li>从最后一个按月分区之后的月份开始，逐月创建分区直到未来几个月，中间缺少的月份会一并补齐。
+ *     平时pmax始终为空，拆分时不需要移动数据；分区维护停止过一段时间(或首次部署到已有数据的库)时，
+ *     pmax中的数据会在这一次拆分中移动到各自月份的分区，只移动一次</li>
+ *     <li>配置了保留月数时，直接删除过期的分区：DROP PARTITION只删除对应的数据文件，耗时与数据量无关
+ *     (order_detail表没有下单时间无法按月分区，其中对应的明细需要先按订单id分批删除)</li>
+ * </ul>
+ * 每个节点都会触发维护任务，通过 {@link JobLease} 保证同一时间只有一个节点执行DDL
+ */
+@Slf4j
+@Component
+public class OrderPartitionMaintainer {
+
+    private static final String TABLE_NAME = "orders";
+    private static final String MAX_PARTITION = "pmax";
+    private static final DateTimeFormatter PARTITION_NAME_FORMATTER = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    private static final Pattern MONTHLY_PARTITION = Pattern.compile("p\\d{6}");
+    private static final String JOB_NAME = "order-partition";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JobLease jobLease;
+
+    @Value("${project.order.partition.enabled}")
+    private boolean enabled;
+    @Value("${project.order.partition.months-ahead}")
+    private int monthsAhead;
+    @Value("${project.order.partition.retention-months}")
+    private int retentionMonths;
+    @Value("${project.order.partition.detail-delete-batch-size}")
+    private int detailDeleteBatchSize;
+    @Value("${project.order.partition.lease-minutes}")
+    private long leaseMinutes;
+
+    public OrderPartitionMaintainer(JdbcTemplate jdbcTemplate, JobLease jobLease) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jobLease = jobLease;
+    }
+
+    /**
+     * 启动时先执行一次，避免部署时恰好缺少当月的分区
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${project.order.partition.cron}")
+    public void maintain() {
+        if (!enabled) return;
+        try {
+            jobLease.runExclusively(JOB_NAME, Duration.ofMinutes(leaseMinutes), this::doMaintain);
+        } catch (Exception e) {
+            log.error("维护{}表分区失败", TABLE_NAME, e);
+        }
+    }
+
+    private void doMaintain() {
+        List<String> partitions = getPartitionNames();
+        if (!partitions.contains(MAX_PARTITION)) {
+            log.warn("{}表不是按月分区的表，跳过分区维护", TABLE_NAME);
+            return;
+        }
+        createFuturePartitions(partitions);
+        if (retentionMonths > 0) dropExpiredPartitions(partitions);
+    }
+
+    private void createFuturePartitions(List<String> partitions) {
+        YearMonth current = YearMonth.now();
+        YearMonth last = null;
+        for (String partitionName : partitions) {
+            if (MONTHLY_PARTITION.matcher(partitionName).matches()) {
+                YearMonth month = YearMonth.parse(partitionName, PARTITION_NAME_FORMATTER);
+                if (last == null || month.isAfter(last)) last = month;
+            }
+        }
+        // 分区必须按时间顺序创建，只能从pmax中拆分出来；从最后一个分区的下个月开始，不跳过中间的月份
+        YearMonth from = last == null ? current : last.plusMonths(1);
+        YearMonth to = current.plusMonths(monthsAhead);
+        if (from.isAfter(to)) return;
+        StringBuilder sql = new StringBuilder("ALTER TABLE " + TABLE_NAME + " REORGANIZE PARTITION " + MAX_PARTITION + " INTO (");
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            String partitionName = PARTITION_NAME_FORMATTER.format(month);
+            sql.append("PARTITION ").append(partitionName)
+                    .append(" VALUES LESS THAN ('").append(month.plusMonths(1).atDay(1)).append("'), ");
+            partitions.add(partitions.size() - 1, partitionName);
+        }
+        sql.append("PARTITION ").append(MAX_PARTITION).append(" VALUES LESS THAN (MAXVALUE))");
+        // 所有缺少的月份在一条语句中拆分，pmax中已有的数据只移动一次
+        jdbcTemplate.execute(sql.toString());
+        log.info("已创建{}表分区:{} ~ {}", TABLE_NAME, PARTITION_NAME_FORMATTER.format(from), PARTITION_NAME_FORMATTER.format(to));
+    }
+
+    private void dropExpiredPartitions(List<String> partitions) {
+        String oldestKept = PARTITION_NAME_FORMATTER.format(YearMonth.now().minusMonths(retentionMonths));
+        for (String partitionName : partitions) {
+            // 分区名称按时间排列，字符串比较即可判断先后
+            if (MAX_PARTITION.equals(partitionName) || partitionName.compareTo(oldestKept) >= 0) continue;
+            int details = deleteDetails(partitionName);
+            log.info("已删除{}表分区{}中订单的明细{}条", TABLE_NAME, partitionName, details);
+            jdbcTemplate.execute("ALTER TABLE " + TABLE_NAME + " DROP PARTITION " + partitionName);
+            log.info("已删除过期的{}表分区:{}", TABLE_NAME, partitionName);
+        }
+    }
+
+    /**
+     * order_detail表没有下单时间，无法按月分区：按订单id顺序分批查询该分区内的订单，每批删除对应的明细，
+     * 每次只锁定一批明细，不会一次删除整个月的明细而长时间锁表、产生过大的undo日志
+     */
+    private int deleteDetails(String partitionName) {
+        int deleted = 0;
+        long lastId = 0;
+        while (true) {
+            List<Long> orderIds = jdbcTemplate.queryForList(
+                    "SELECT id FROM " + TABLE_NAME + " PARTITION (" + partitionName + ") WHERE id > ? ORDER BY id LIMIT ?",
+                    Long.class, lastId, detailDeleteBatchSize);
+            if (orderIds.isEmpty()) return deleted;
+            String placeholders = String.join(",", Collections.nCopies(orderIds.size(), "?"));
+            deleted += jdbcTemplate.update("DELETE FROM order_detail WHERE order_id IN (" + placeholders + ")", orderIds.toArray());
+            lastId = orderIds.get(orderIds.size() - 1);
+            if (orderIds.size() < detailDeleteBatchSize) return deleted;
+        }
+    }
+
+    private List<String> getPartitionNames() {
+        return jdbcTemplate.queryForList(
+                "SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+                        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL " +
+                        "ORDER BY PARTITION_ORDINAL_POSITION",
+                String.class, TABLE_NAME);
+    }
+}
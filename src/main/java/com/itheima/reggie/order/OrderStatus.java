@@ -0,0 +1,64 @@
+package com.itheima.reggie.order;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * 订单状态，以及状态之间允许的流转
+ * <pre>
+ * 待付款 --> 待派送 --> 已派送 --> 已完成
+ *   |          |
+ *   +----------+-----> 已取消
+ * </pre>
+ */
+public enum OrderStatus {
+    PENDING_PAYMENT(1, "待付款"),
+    TO_BE_DELIVERED(2, "待派送"),
+    DELIVERED(3, "已派送"),
+    COMPLETED(4, "已完成"),
+    CANCELLED(5, "已取消");
+
+    private final int code;
+    private final String description;
+
+    OrderStatus(int code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * 可以流转到当前状态的状态
+     */
+    public Set<OrderStatus> getAllowedSources() {
+        switch (this) {
+            case TO_BE_DELIVERED:
+                return EnumSet.of(PENDING_PAYMENT);
+            case DELIVERED:
+                return EnumSet.of(TO_BE_DELIVERED);
+            case COMPLETED:
+                return EnumSet.of(DELIVERED);
+            case CANCELLED:
+                return EnumSet.of(PENDING_PAYMENT, TO_BE_DELIVERED);
+            default:
+                return Collections.emptySet();
+        }
+    }
+
+    /**
+     * @return 对应的状态，code不合法时返回null
+     */
+    public static OrderStatus of(Integer code) {
+        if (code == null) return null;
+        return Arrays.stream(values()).filter(status -> status.code == code).findFirst().orElse(null);
+    }
+}
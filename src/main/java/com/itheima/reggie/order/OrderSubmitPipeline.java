@@ -0,0 +1,315 @@
+package com.itheima.reggie.order;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.itheima.reggie.common.JacksonObjectMapper;
+import com.itheima.reggie.dto.PendingOrder;
+import com.itheima.reggie.exception.UnclassifiedBusinessException;
+import com.itheima.reggie.service.OrderService;
+import com.itheima.reggie.service.ShoppingCartService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步下单流水线
+ * <p>
+ * 同步下单时每个订单都要单独占用一个数据库连接完成一次事务，用餐高峰期连接池很快会被耗尽。
+ * 开启流水线后，请求线程只负责校验与组装订单(只有查询)，然后将订单放入有界队列并立即返回订单id；
+ * 少量的写入线程从队列中批量取出订单，在一个事务中写入多个订单(组提交)，写入结果保存在Redis中供客户端查询
+ * <p>
+ * 一批订单写入失败时，逐个订单重新写入，只有确实无法写入的订单会被标记为失败
+ * <p>
+ * 内存队列在节点停止或崩溃时会丢失，因此返回订单id之前，先将订单写入Redis中本节点的待写入记录
+ * (reggie:order:pipeline:{节点id}，需要Redis开启AOF持久化)，并从购物车中删除已下单的商品，
+ * 避免写入完成前用户再次提交同一购物车而重复下单；订单写入数据库或确定失败后删除记录，失败时将商品加回购物车。
+ * 节点启动时先重新写入上次停止时遗留的记录，已经写入数据库的订单不会重复写入
+ */
+@Slf4j
+@Component
+public class OrderSubmitPipeline {
+
+    private static final String STATUS_KEY_PREFIX = "reggie:order:submit:";
+    private static final String INTENT_KEY_PREFIX = "reggie:order:pipeline:";
+
+    private final OrderService orderService;
+    private final ShoppingCartService shoppingCartService;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final JacksonObjectMapper objectMapper = new JacksonObjectMapper();
+
+    @Value("${project.order.pipeline.enabled}")
+    private boolean enabled;
+    @Value("${project.order.pipeline.queue-capacity}")
+    private int queueCapacity;
+    @Value("${project.order.pipeline.writers}")
+    private int writers;
+    @Value("${project.order.pipeline.batch-size}")
+    private int batchSize;
+    @Value("${project.order.pipeline.linger-millis}")
+    private long lingerMillis;
+    @Value("${project.order.pipeline.status-ttl-minutes}")
+    private long statusTtlMinutes;
+    @Value("${project.id.worker-id}")
+    private long workerId;
+
+    private BlockingQueue<PendingOrder> queue;
+    private final List<Thread> writerThreads = new ArrayList<>();
+    private volatile boolean running;
+    private Timer batchTimer;
+    private DistributionSummary batchSizeSummary;
+
+    public OrderSubmitPipeline(OrderService orderService, ShoppingCartService shoppingCartService,
+                               StringRedisTemplate stringRedisTemplate, MeterRegistry meterRegistry) {
+        this.orderService = orderService;
+        this.shoppingCartService = shoppingCartService;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        Gauge.builder("reggie.order.pipeline.queue.size", queue, BlockingQueue::size)
+                .description("等待写入的订单数")
+                .register(meterRegistry);
+        batchTimer = Timer.builder("reggie.order.pipeline.batch")
+                .description("一批订单的写入耗时")
+                .register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("reggie.order.pipeline.batch.size")
+                .description("一批写入的订单数")
+                .register(meterRegistry);
+        recover();
+        running = true;
+        for (int i = 1; i <= writers; i++) {
+            Thread thread = new Thread(this::writeLoop, "order-writer-" + i);
+            thread.start();
+            writerThreads.add(thread);
+        }
+        log.info("异步下单流水线已启动，写入线程数:{}，每批最多:{}个订单", writers, batchSize);
+    }
+
+    /**
+     * 停止接收新的订单，并等待队列中已有的订单写入完成
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) return;
+        running = false;
+        for (Thread thread : writerThreads) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        if (!queue.isEmpty()) log.warn("停止时仍有{}个订单未写入，将在下次启动时写入", queue.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 提交订单到流水线
+     *
+     * @param pendingOrder 已经校验并组装完成的订单
+     */
+    public void submit(PendingOrder pendingOrder) {
+        if (!running) throw new UnclassifiedBusinessException("系统维护中，请稍后再下单");
+        Long userId = pendingOrder.getOrders().getUserId();
+        Long orderId = pendingOrder.getOrders().getId();
+        // 先保存待写入记录并删除购物车中已下单的商品，再返回订单id
+        pendingOrder.setCartRemoved(true);
+        stringRedisTemplate.opsForHash().put(intentKey(), String.valueOf(orderId), toJson(pendingOrder));
+        boolean cartRemoved = false;
+        boolean queued = false;
+        try {
+            shoppingCartService.removeOrderedItems(pendingOrder.getShoppingCarts());
+            cartRemoved = true;
+            // 先写入状态，保证客户端拿到订单id后一定能查询到状态
+            saveStatus(userId, orderId, OrderSubmitStatus.PROCESSING);
+            queued = queue.offer(pendingOrder);
+        } finally {
+            // 任何一步失败或队列已满时撤销已完成的步骤，避免启动时写入客户端已被告知失败的订单
+            if (!queued) cancel(pendingOrder, cartRemoved);
+        }
+        if (!queued) throw new UnclassifiedBusinessException("当前下单人数过多，请稍后再试");
+    }
+
+    private void cancel(PendingOrder pendingOrder, boolean cartRemoved) {
+        Long orderId = pendingOrder.getOrders().getId();
+        try {
+            stringRedisTemplate.opsForHash().delete(intentKey(), String.valueOf(orderId));
+            stringRedisTemplate.delete(statusKey(pendingOrder.getOrders().getUserId(), orderId));
+        } catch (Exception e) {
+            log.error("撤销订单{}的待写入记录失败", orderId, e);
+        }
+        if (!cartRemoved) return;
+        try {
+            shoppingCartService.restoreItems(pendingOrder.getShoppingCarts());
+        } catch (Exception e) {
+            log.error("撤销订单{}时恢复购物车失败", orderId, e);
+        }
+    }
+
+    /**
+     * 查询订单的写入状态
+     *
+     * @return 写入状态，状态不存在(不是本人的订单或已过期)时返回null
+     */
+    public OrderSubmitStatus getStatus(Long userId, Long orderId) {
+        String status = stringRedisTemplate.opsForValue().get(statusKey(userId, orderId));
+        return status == null ? null : OrderSubmitStatus.valueOf(status);
+    }
+
+    private void writeLoop() {
+        while (running || !queue.isEmpty()) {
+            try {
+                List<PendingOrder> batch = takeBatch();
+                if (!batch.isEmpty()) write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("写入订单时发生异常", e);
+            }
+        }
+    }
+
+    /**
+     * 取出一批订单：取到第一个订单后，最多再等待lingerMillis凑够一批，低峰期不会因此产生明显延迟
+     */
+    private List<PendingOrder> takeBatch() throws InterruptedException {
+        PendingOrder first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) return Collections.emptyList();
+        List<PendingOrder> batch = new ArrayList<>(batchSize);
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) break;
+            PendingOrder next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) break;
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void write(List<PendingOrder> batch) {
+        batchSizeSummary.record(batch.size());
+        long start = System.nanoTime();
+        try {
+            orderService.persist(batch);
+            batch.forEach(pendingOrder -> finish(pendingOrder, OrderSubmitStatus.SUCCESS));
+            return;
+        } catch (Exception e) {
+            log.warn("{}个订单批量写入失败，改为逐个写入", batch.size(), e);
+        } finally {
+            batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        for (PendingOrder pendingOrder : batch) {
+            try {
+                orderService.persist(Collections.singletonList(pendingOrder));
+                finish(pendingOrder, OrderSubmitStatus.SUCCESS);
+            } catch (Exception e) {
+                log.error("订单{}写入失败", pendingOrder.getOrders().getId(), e);
+                try {
+                    shoppingCartService.restoreItems(pendingOrder.getShoppingCarts());
+                } catch (Exception restoreException) {
+                    log.error("订单{}写入失败后恢复购物车失败", pendingOrder.getOrders().getId(), restoreException);
+                }
+                finish(pendingOrder, OrderSubmitStatus.FAILED);
+            }
+        }
+    }
+
+    /**
+     * 写入上次停止时遗留的订单：停止前已经写入数据库、但还没来得及删除记录的订单，只删除记录
+     */
+    private void recover() {
+        Map<Object, Object> intents = stringRedisTemplate.opsForHash().entries(intentKey());
+        if (intents.isEmpty()) return;
+        List<PendingOrder> pendingOrders = new ArrayList<>(intents.size());
+        intents.values().forEach(json -> pendingOrders.add(fromJson((String) json)));
+        List<Long> orderIds = new ArrayList<>(pendingOrders.size());
+        pendingOrders.forEach(pendingOrder -> orderIds.add(pendingOrder.getOrders().getId()));
+        Set<Long> persistedIds = new HashSet<>();
+        for (int from = 0; from < orderIds.size(); from += batchSize) {
+            orderService.listByIds(orderIds.subList(from, Math.min(from + batchSize, orderIds.size())))
+                    .forEach(orders -> persistedIds.add(orders.getId()));
+        }
+        List<PendingOrder> batch = new ArrayList<>(batchSize);
+        for (PendingOrder pendingOrder : pendingOrders) {
+            if (persistedIds.contains(pendingOrder.getOrders().getId())) {
+                finish(pendingOrder, OrderSubmitStatus.SUCCESS);
+                continue;
+            }
+            batch.add(pendingOrder);
+            if (batch.size() >= batchSize) {
+                write(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) write(batch);
+        log.info("已处理上次停止时遗留的{}个订单，其中{}个已经写入", pendingOrders.size(), persistedIds.size());
+    }
+
+    /**
+     * 保存最终的写入状态并删除待写入记录
+     */
+    private void finish(PendingOrder pendingOrder, OrderSubmitStatus status) {
+        saveStatus(pendingOrder, status);
+        stringRedisTemplate.opsForHash().delete(intentKey(), String.valueOf(pendingOrder.getOrders().getId()));
+    }
+
+    private void saveStatus(PendingOrder pendingOrder, OrderSubmitStatus status) {
+        saveStatus(pendingOrder.getOrders().getUserId(), pendingOrder.getOrders().getId(), status);
+    }
+
+    private void saveStatus(Long userId, Long orderId, OrderSubmitStatus status) {
+        stringRedisTemplate.opsForValue().set(statusKey(userId, orderId), status.name(), Duration.ofMinutes(statusTtlMinutes));
+    }
+
+    private String intentKey() {
+        return INTENT_KEY_PREFIX + workerId;
+    }
+
+    private String toJson(PendingOrder pendingOrder) {
+        try {
+            return objectMapper.writeValueAsString(pendingOrder);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private PendingOrder fromJson(String json) {
+        try {
+            return objectMapper.readValue(json, PendingOrder.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * key中包含用户id，用户只能查询到自己的订单状态
+     */
+    private static String statusKey(Long userId, Long orderId) {
+        return STATUS_KEY_PREFIX + userId + ":" + orderId;
+    }
+}
@@ -0,0 +1,19 @@
+package com.itheima.reggie.order;
+
+/**
+ * 异步下单时订单的写入状态
+ */
+public enum OrderSubmitStatus {
+    /**
+     * 已接收，等待写入数据库
+     */
+    PROCESSING,
+    /**
+     * 已写入数据库
+     */
+    SUCCESS,
+    /**
+     * 写入失败
+     */
+    FAILED
+}
@@ -0,0 +1,200 @@
+package com.itheima.reggie.order;
+
+import com.itheima.reggie.entity.Dish;
+import com.itheima.reggie.entity.Setmeal;
+import com.itheima.reggie.service.DishService;
+import com.itheima.reggie.service.SetmealService;
+import com.itheima.reggie.service.impl.MenuSnapshotServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 结算使用的价格表：内存中保存所有在售菜品与套餐的单价，下单时不再信任购物车中保存的金额，也不需要查询数据库
+ * <p>
+ * 价格表与菜单版本号(reggie:menu:version)对应。管理端修改分类、菜品、套餐后递增版本号并通过Redis发布通知，
+ * 所有节点收到后在后台重新加载；另外定时比较Redis中的版本号，作为通知丢失时的兜底。
+ * 加载期间继续使用旧的价格表，加载完成后整体替换，读取时不需要加锁
+ */
+@Slf4j
+@Component
+public class PriceTable implements MessageListener {
+
+    /**
+     * 菜单修改通知，消息内容为新的版本号
+     */
+    public static final String CHANNEL = "reggie:menu:changed";
+
+    private final DishService dishService;
+    private final SetmealService setmealService;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private volatile Prices prices;
+    private final ExecutorService reloader = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "price-table-reloader"));
+    /**
+     * 已经有等待执行的加载任务时，不再重复提交
+     */
+    private final AtomicBoolean reloadPending = new AtomicBoolean();
+
+    public PriceTable(DishService dishService, SetmealService setmealService, StringRedisTemplate stringRedisTemplate,
+                      RedisMessageListenerContainer redisMessageListenerContainer) {
+        this.dishService = dishService;
+        this.setmealService = setmealService;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisMessageListenerContainer = redisMessageListenerContainer;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    @PreDestroy
+    public void stop() {
+        reloader.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        requestReload();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        requestReload();
+    }
+
+    /**
+     * 定时检查菜单版本号
+     */
+    @Scheduled(fixedDelayString = "${project.order.pricing.check-millis}")
+    public void checkVersion() {
+        Prices current = prices;
+        if (current == null || readVersion() > current.version) requestReload();
+    }
+
+    /**
+     * 菜品单价
+     *
+     * @return 菜品不存在、已停售或已删除时返回null
+     */
+    public Price getDishPrice(Long dishId) {
+        return getPrices().dishes.get(dishId);
+    }
+
+    /**
+     * 套餐单价
+     *
+     * @return 套餐不存在、已停售或已删除时返回null
+     */
+    public Price getSetmealPrice(Long setmealId) {
+        return getPrices().setmeals.get(setmealId);
+    }
+
+    /**
+     * 当前价格表对应的菜单版本号
+     */
+    public long getVersion() {
+        return getPrices().version;
+    }
+
+    private Prices getPrices() {
+        Prices current = prices;
+        // 启动后第一次加载完成前就有请求时，同步加载
+        return current != null ? current : load();
+    }
+
+    private void requestReload() {
+        if (!reloadPending.compareAndSet(false, true)) return;
+        reloader.execute(() -> {
+            reloadPending.set(false);
+            try {
+                load();
+            } catch (Exception e) {
+                log.error("加载价格表失败，继续使用旧的价格表", e);
+            }
+        });
+    }
+
+    private synchronized Prices load() {
+        // 先读取版本号再查询数据：加载期间菜单被修改时，随后的通知会触发再次加载
+        long version = readVersion();
+        List<Dish> dishes = dishService.lambdaQuery().select(Dish::getId, Dish::getPrice)
+                .eq(Dish::getStatus, 1).eq(Dish::getIsDeleted, 0).list();
+        List<Setmeal> setmeals = setmealService.lambdaQuery().select(Setmeal::getId, Setmeal::getPrice)
+                .eq(Setmeal::getStatus, 1).eq(Setmeal::getIsDeleted, 0).list();
+        Map<Long, Price> dishPrices = new HashMap<>(dishes.size() * 2);
+        dishes.forEach(dish -> dishPrices.put(dish.getId(), Price.ofCents(dish.getPrice())));
+        Map<Long, Price> setmealPrices = new HashMap<>(setmeals.size() * 2);
+        setmeals.forEach(setmeal -> setmealPrices.put(setmeal.getId(), Price.ofCents(setmeal.getPrice())));
+
+        Prices loaded = new Prices(version, dishPrices, setmealPrices);
+        prices = loaded;
+        log.info("价格表已加载，菜单版本号:{}，菜品{}个，套餐{}个", version, dishPrices.size(), setmealPrices.size());
+        return loaded;
+    }
+
+    private long readVersion() {
+        String version = stringRedisTemplate.opsForValue().get(MenuSnapshotServiceImpl.VERSION_KEY);
+        return version == null ? 0L : Long.parseLong(version);
+    }
+
+    /**
+     * 单价，同时保存以分为单位的整数与以元为单位的金额，结算时只做long运算，也不需要为每行明细创建新的BigDecimal
+     */
+    public static final class Price {
+        private final long cents;
+        private final BigDecimal yuan;
+
+        private Price(long cents) {
+            this.cents = cents;
+            this.yuan = BigDecimal.valueOf(cents, 2);
+        }
+
+        /**
+         * 菜品与套餐表中的价格以分为单位保存
+         */
+        static Price ofCents(BigDecimal cents) {
+            return new Price(cents == null ? 0L : cents.setScale(0, RoundingMode.HALF_UP).longValue());
+        }
+
+        public long getCents() {
+            return cents;
+        }
+
+        public BigDecimal getYuan() {
+            return yuan;
+        }
+    }
+
+    private static final class Prices {
+        private final long version;
+        private final Map<Long, Price> dishes;
+        private final Map<Long, Price> setmeals;
+
+        Prices(long version, Map<Long, Price> dishes, Map<Long, Price> setmeals) {
+            this.version = version;
+            this.dishes = dishes;
+            this.setmeals = setmeals;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.itheima.reggie.order;
+
+/**
+ * 下单时购物车中的金额与价格表不一致(加入购物车后商品被改价)时的处理方式
+ */
+public enum StalePricePolicy {
+    /**
+     * 按价格表中的当前价格下单
+     */
+    REPRICE,
+    /**
+     * 拒绝下单，并将购物车中的金额更新为当前价格，由用户确认后重新下单
+     */
+    REJECT
+}
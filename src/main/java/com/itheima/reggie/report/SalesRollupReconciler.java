@@ -0,0 +1,120 @@
+package com.itheima.reggie.report;
+
+import com.itheima.reggie.common.JobLease;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+
+/**
+ * 根据订单数据重建某一天的销售汇总，修正增量维护中丢失的部分(例如节点宕机时内存中尚未写入的增量)
+ * <p>
+ * 重建期间其他节点写入的同一天的增量可能被重复计算，因此定时任务只重建已经结束的日期；
+ * 手动重建当天的汇总时，应在订单较少的时段进行
+ * <p>
+ * 节点宕机丢失的当天增量，要到第二天定时重建后才会修正，在此之前当天的报表会偏少；需要及时修正时手动重建当天的汇总
+ * <p>
+ * 定时重建与手动重建通过 {@link JobLease} 互斥，集群中同一时间只有一个节点在重建汇总
+ */
+@Slf4j
+@Component
+public class SalesRollupReconciler {
+
+    /**
+     * 某一天未取消的订单，包括已归档的订单
+     */
+    private static final String ORDERS_OF_DAY =
+            "SELECT order_time, amount FROM orders WHERE order_time >= :begin AND order_time < :end AND status <> 5 " +
+                    "UNION ALL " +
+                    "SELECT order_time, amount FROM orders_archive WHERE order_time >= :begin AND order_time < :end AND status <> 5";
+    private static final String DETAILS_OF_DAY =
+            "SELECT d.dish_id, d.setmeal_id, d.name, d.number, d.amount FROM order_detail d JOIN orders o ON d.order_id = o.id " +
+                    "WHERE o.order_time >= :begin AND o.order_time < :end AND o.status <> 5 " +
+                    "UNION ALL " +
+                    "SELECT d.dish_id, d.setmeal_id, d.name, d.number, d.amount FROM order_detail_archive d JOIN orders_archive o ON d.order_id = o.id " +
+                    "WHERE o.order_time >= :begin AND o.order_time < :end AND o.status <> 5";
+
+    private static final String JOB_NAME = "sales-rollup-rebuild";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SalesRollupRecorder salesRollupRecorder;
+    private final JobLease jobLease;
+
+    @Value("${project.report.rollup.reconcile-days}")
+    private int reconcileDays;
+    @Value("${project.report.rollup.lease-minutes}")
+    private long leaseMinutes;
+
+    public SalesRollupReconciler(NamedParameterJdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                 SalesRollupRecorder salesRollupRecorder, JobLease jobLease) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.salesRollupRecorder = salesRollupRecorder;
+        this.jobLease = jobLease;
+    }
+
+    /**
+     * 每天重建之前几天的汇总
+     */
+    @Scheduled(cron = "${project.report.rollup.reconcile-cron}")
+    public void reconcile() {
+        if (!salesRollupRecorder.isEnabled()) return;
+        LocalDate today = LocalDate.now();
+        try {
+            jobLease.runExclusively(JOB_NAME, Duration.ofMinutes(leaseMinutes), () -> {
+                for (int i = reconcileDays; i >= 1; i--) {
+                    try {
+                        rebuild(today.minusDays(i));
+                    } catch (Exception e) {
+                        log.error("重建{}的销售汇总失败", today.minusDays(i), e);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            log.error("重建销售汇总失败", e);
+        }
+    }
+
+    /**
+     * 手动重建某一天的销售汇总
+     *
+     * @param date 日期
+     * @return 是否已重建，其他节点正在重建汇总时返回false
+     */
+    public boolean tryRebuild(LocalDate date) {
+        return jobLease.runExclusively(JOB_NAME, Duration.ofMinutes(leaseMinutes), () -> rebuild(date));
+    }
+
+    private void rebuild(LocalDate date) {
+        long start = System.currentTimeMillis();
+        // 先写入本节点尚未写入的增量，避免重建之后再次累加
+        salesRollupRecorder.flush();
+        MapSqlParameterSource params = new MapSqlParameterSource("date", date)
+                .addValue("begin", date.atStartOfDay())
+                .addValue("end", date.plusDays(1).atStartOfDay());
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM sales_hourly WHERE stat_hour >= :begin AND stat_hour < :end", params);
+            jdbcTemplate.update("INSERT INTO sales_hourly (stat_hour, order_count, amount) " +
+                    "SELECT DATE_FORMAT(o.order_time, '%Y-%m-%d %H:00:00'), COUNT(*), SUM(o.amount) " +
+                    "FROM (" + ORDERS_OF_DAY + ") o GROUP BY DATE_FORMAT(o.order_time, '%Y-%m-%d %H:00:00')", params);
+            jdbcTemplate.update("DELETE FROM sales_daily_item WHERE stat_date = :date", params);
+            jdbcTemplate.update("INSERT INTO sales_daily_item (stat_date, item_type, item_id, category_id, name, quantity, amount) " +
+                    "SELECT :date, i.item_type, i.item_id, MAX(IFNULL(dish.category_id, setmeal.category_id)), MAX(i.name), " +
+                    "SUM(i.number), SUM(i.amount * i.number) " +
+                    "FROM (SELECT IF(d.dish_id IS NULL, " + SalesRollupRecorder.ITEM_TYPE_SETMEAL + ", " + SalesRollupRecorder.ITEM_TYPE_DISH + ") item_type, " +
+                    "IFNULL(d.dish_id, d.setmeal_id) item_id, d.name, d.number, d.amount " +
+                    "FROM (" + DETAILS_OF_DAY + ") d WHERE d.dish_id IS NOT NULL OR d.setmeal_id IS NOT NULL) i " +
+                    "LEFT JOIN dish ON i.item_type = " + SalesRollupRecorder.ITEM_TYPE_DISH + " AND dish.id = i.item_id " +
+                    "LEFT JOIN setmeal ON i.item_type = " + SalesRollupRecorder.ITEM_TYPE_SETMEAL + " AND setmeal.id = i.item_id " +
+                    "GROUP BY i.item_type, i.item_id", params);
+        });
+        log.info("已重建{}的销售汇总，耗时{}ms", date, System.currentTimeMillis() - start);
+    }
+}
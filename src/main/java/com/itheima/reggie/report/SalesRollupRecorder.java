@@ -0,0 +1,244 @@
+package com.itheima.reggie.report;
+
+import com.itheima.reggie.entity.OrderDetail;
+import com.itheima.reggie.entity.Orders;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * 销售汇总表的增量维护
+ * <p>
+ * 下单、取消订单的事务提交后，将对应的增量(订单数、金额、菜品份数)累加到内存中，按小时与按天+菜品/套餐两个维度合并；
+ * 定时将累积的增量用多行 INSERT ... ON DUPLICATE KEY UPDATE 批量写入sales_hourly与sales_daily_item。
+ * 用餐高峰期每秒的大量订单只会产生少量的汇总表写入，报表查询只读取汇总表，不再对订单表做聚合
+ * <p>
+ * 汇总按下单时间归属，被取消的订单从其下单时间所在的汇总中扣除，因此可以随时根据订单数据重建某一天的汇总；
+ * 节点宕机时尚未写入的增量会丢失，由{@link SalesRollupReconciler}每天重建前一天的汇总进行修正
+ */
+@Slf4j
+@Component
+public class SalesRollupRecorder {
+
+    public static final int ITEM_TYPE_DISH = 1;
+    public static final int ITEM_TYPE_SETMEAL = 2;
+    /**
+     * 每条INSERT语句最多写入的行数
+     */
+    private static final int ROWS_PER_STATEMENT = 500;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Value("${project.report.rollup.enabled}")
+    private boolean enabled;
+
+    /**
+     * key为下单时间所在的整点
+     */
+    private final ConcurrentHashMap<LocalDateTime, Delta> hourlyDeltas = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ItemKey, Delta> itemDeltas = new ConcurrentHashMap<>();
+
+    public SalesRollupRecorder(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 在当前事务提交后计入新订单
+     *
+     * @param orders           订单，需要包含id、下单时间、金额
+     * @param detailsByOrderId 订单明细，key为订单id
+     */
+    public void recordCreatedAfterCommit(List<Orders> orders, Map<Long, List<OrderDetail>> detailsByOrderId) {
+        recordAfterCommit(orders, detailsByOrderId, 1);
+    }
+
+    /**
+     * 在当前事务提交后扣除被取消的订单
+     *
+     * @param orders           订单，需要包含id、下单时间、金额
+     * @param detailsByOrderId 订单明细，key为订单id
+     */
+    public void recordCancelledAfterCommit(List<Orders> orders, Map<Long, List<OrderDetail>> detailsByOrderId) {
+        recordAfterCommit(orders, detailsByOrderId, -1);
+    }
+
+    private void recordAfterCommit(List<Orders> orders, Map<Long, List<OrderDetail>> detailsByOrderId, int sign) {
+        if (!enabled || orders.isEmpty()) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    record(orders, detailsByOrderId, sign);
+                }
+            });
+        } else {
+            record(orders, detailsByOrderId, sign);
+        }
+    }
+
+    private void record(List<Orders> ordersList, Map<Long, List<OrderDetail>> detailsByOrderId, int sign) {
+        BigDecimal signValue = BigDecimal.valueOf(sign);
+        for (Orders orders : ordersList) {
+            LocalDateTime hour = orders.getOrderTime().truncatedTo(ChronoUnit.HOURS);
+            add(hourlyDeltas, hour, sign, orders.getAmount().multiply(signValue), null);
+            LocalDate date = hour.toLocalDate();
+            for (OrderDetail orderDetail : detailsByOrderId.getOrDefault(orders.getId(), Collections.emptyList())) {
+                ItemKey key;
+                if (orderDetail.getDishId() != null) {
+                    key = new ItemKey(date, ITEM_TYPE_DISH, orderDetail.getDishId());
+                } else if (orderDetail.getSetmealId() != null) {
+                    key = new ItemKey(date, ITEM_TYPE_SETMEAL, orderDetail.getSetmealId());
+                } else {
+                    continue;
+                }
+                long quantity = (long) orderDetail.getNumber() * sign;
+                add(itemDeltas, key, quantity, orderDetail.getAmount().multiply(BigDecimal.valueOf(quantity)), orderDetail.getName());
+            }
+        }
+    }
+
+    private static <K> void add(ConcurrentHashMap<K, Delta> deltas, K key, long count, BigDecimal amount, String name) {
+        // compute对同一个key是原子的，与flush中的remove不会相互覆盖
+        deltas.compute(key, (k, delta) -> {
+            if (delta == null) delta = new Delta();
+            delta.count += count;
+            delta.amount = delta.amount.add(amount);
+            if (name != null) delta.name = name;
+            return delta;
+        });
+    }
+
+    /**
+     * 将累积的增量写入汇总表，写入失败的增量放回内存，下次重试
+     */
+    @Scheduled(fixedDelayString = "${project.report.rollup.flush-millis}")
+    public synchronized void flush() {
+        if (!enabled) return;
+        List<Map.Entry<LocalDateTime, Delta>> hourly = drain(hourlyDeltas);
+        upsert(hourlyDeltas, hourly,
+                "INSERT INTO sales_hourly (stat_hour, order_count, amount) VALUES ",
+                "(?, ?, ?)",
+                " ON DUPLICATE KEY UPDATE order_count = order_count + VALUES(order_count), amount = amount + VALUES(amount)",
+                (hour, delta) -> new Object[]{hour, delta.count, delta.amount});
+
+        List<Map.Entry<ItemKey, Delta>> items = drain(itemDeltas);
+        if (items.isEmpty()) return;
+        Map<Long, Long> dishCategories = getCategoryIDs("dish", items, ITEM_TYPE_DISH);
+        Map<Long, Long> setmealCategories = getCategoryIDs("setmeal", items, ITEM_TYPE_SETMEAL);
+        upsert(itemDeltas, items,
+                "INSERT INTO sales_daily_item (stat_date, item_type, item_id, category_id, name, quantity, amount) VALUES ",
+                "(?, ?, ?, ?, ?, ?, ?)",
+                " ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity), amount = amount + VALUES(amount), " +
+                        "name = IFNULL(VALUES(name), name), category_id = IFNULL(VALUES(category_id), category_id)",
+                (key, delta) -> new Object[]{key.date, key.itemType, key.itemId,
+                        (key.itemType == ITEM_TYPE_DISH ? dishCategories : setmealCategories).get(key.itemId),
+                        delta.name, delta.count, delta.amount});
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+    }
+
+    private static <K> List<Map.Entry<K, Delta>> drain(ConcurrentHashMap<K, Delta> deltas) {
+        List<Map.Entry<K, Delta>> entries = new ArrayList<>();
+        for (K key : deltas.keySet()) {
+            Delta delta = deltas.remove(key);
+            if (delta != null) entries.add(new AbstractMap.SimpleImmutableEntry<>(key, delta));
+        }
+        return entries;
+    }
+
+    private <K> void upsert(ConcurrentHashMap<K, Delta> deltas, List<Map.Entry<K, Delta>> entries,
+                            String insert, String rowPlaceholder, String onDuplicate,
+                            BiFunction<K, Delta, Object[]> rowMapper) {
+        for (int from = 0; from < entries.size(); from += ROWS_PER_STATEMENT) {
+            List<Map.Entry<K, Delta>> chunk = entries.subList(from, Math.min(from + ROWS_PER_STATEMENT, entries.size()));
+            String sql = insert + String.join(", ", Collections.nCopies(chunk.size(), rowPlaceholder)) + onDuplicate;
+            Object[] args = chunk.stream()
+                    .flatMap(entry -> Arrays.stream(rowMapper.apply(entry.getKey(), entry.getValue())))
+                    .toArray();
+            try {
+                jdbcTemplate.getJdbcOperations().update(sql, args);
+            } catch (Exception e) {
+                log.error("写入销售汇总失败，{}条增量将在下次重试", chunk.size(), e);
+                chunk.forEach(entry -> add(deltas, entry.getKey(), entry.getValue().count, entry.getValue().amount, entry.getValue().name));
+            }
+        }
+    }
+
+    /**
+     * 查询菜品或套餐当前所属的分类
+     */
+    private Map<Long, Long> getCategoryIDs(String table, List<Map.Entry<ItemKey, Delta>> items, int itemType) {
+        Set<Long> ids = items.stream().map(Map.Entry::getKey)
+                .filter(key -> key.itemType == itemType).map(key -> key.itemId)
+                .collect(Collectors.toSet());
+        Map<Long, Long> categoryIDs = new HashMap<>();
+        if (ids.isEmpty()) return categoryIDs;
+        try {
+            jdbcTemplate.query("SELECT id, category_id FROM " + table + " WHERE id IN (:ids)",
+                    new MapSqlParameterSource("ids", ids),
+                    rs -> {
+                        categoryIDs.put(rs.getLong("id"), rs.getLong("category_id"));
+                    });
+        } catch (Exception e) {
+            // 分类只影响按分类统计，查询失败时保留汇总表中原有的分类
+            log.warn("查询{}的分类失败", table, e);
+        }
+        return categoryIDs;
+    }
+
+    private static class Delta {
+        /**
+         * 订单数或份数
+         */
+        private long count;
+        private BigDecimal amount = BigDecimal.ZERO;
+        private String name;
+    }
+
+    private static class ItemKey {
+        private final LocalDate date;
+        private final int itemType;
+        private final long itemId;
+
+        ItemKey(LocalDate date, int itemType, long itemId) {
+            this.date = date;
+            this.itemType = itemType;
+            this.itemId = itemId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ItemKey)) return false;
+            ItemKey itemKey = (ItemKey) o;
+            return itemType == itemKey.itemType && itemId == itemKey.itemId && date.equals(itemKey.date);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(date, itemType, itemId);
+        }
+    }
+}
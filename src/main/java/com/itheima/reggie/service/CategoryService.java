@@ -4,7 +4,9 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.itheima.reggie.entity.Category;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface CategoryService extends IService<Category> {
     void remove(Long id);
@@ -13,4 +15,12 @@ public interface CategoryService extends IService<Category> {
 
     Page<Category> getCategoryAsPage(int page, int pageSize);
 
+    /**
+     * 一次性查询多个分类的名称
+     *
+     * @param ids 分类id集合
+     * @return key为分类id，value为分类名称
+     */
+    Map<Long, String> getNamesByIDsAsMap(Collection<Long> ids);
+
 }
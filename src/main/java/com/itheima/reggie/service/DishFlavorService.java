@@ -3,5 +3,17 @@ package com.itheima.reggie.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.itheima.reggie.entity.DishFlavor;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 public interface DishFlavorService extends IService<DishFlavor> {
+
+    /**
+     * 一次性查询多个菜品的口味数据，并按菜品id分组
+     *
+     * @param dishIds 菜品id集合
+     * @return key为菜品id，value为该菜品的口味列表
+     */
+    Map<Long, List<DishFlavor>> getDataByDishIDsAsMap(Collection<Long> dishIds);
 }
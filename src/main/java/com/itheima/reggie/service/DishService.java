@@ -2,10 +2,13 @@ package com.itheima.reggie.service;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.itheima.reggie.common.CursorPage;
 import com.itheima.reggie.dto.DishDto;
 import com.itheima.reggie.entity.Dish;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 public interface DishService extends IService<Dish> {
 
@@ -50,6 +53,15 @@ public interface DishService extends IService<Dish> {
      */
     void getDishPage(Page<Dish> pageWrapper, String queryName);
 
+    /**
+     * 按更新时间倒序游标分页查询菜品，不查询总条数
+     *
+     * @param after     上一页返回的游标，为空时查询第一页
+     * @param pageSize  每页条数
+     * @param queryName 菜品名称
+     */
+    CursorPage<Dish> getDishCursorPage(String after, int pageSize, String queryName);
+
     /**
      * 根据分类查询菜品信息（同时根据菜品自身的sort属性与更新时间信息排序）
      *
@@ -60,6 +72,14 @@ public interface DishService extends IService<Dish> {
 
     List<Dish> getDishListByMultiID(List<Long> ids);
 
+    /**
+     * 查询菜品所属的分类id，用于在修改菜品后删除对应分类的缓存
+     *
+     * @param ids 菜品id集合
+     * @return 分类id集合
+     */
+    Set<Long> getCategoryIDsByDishIDs(Collection<Long> ids);
+
     /**
      * 将菜品分页数据转为dto分页数据，dto中增加了口味数据与分类名称
      *
@@ -68,6 +88,14 @@ public interface DishService extends IService<Dish> {
      */
     Page<DishDto> convertToDishDtoPage(Page<Dish> dishPage);
 
+    /**
+     * 将菜品信息转为DTO，dto中添加了口味信息与分类名称
+     *
+     * @param dishList 菜品信息
+     * @return 菜品信息DTO
+     */
+    List<DishDto> convertToDishDtoListWithCategoryName(List<Dish> dishList);
+
     /**
      * 将菜品信息转为DTO，dto中添加了口味信息
      *
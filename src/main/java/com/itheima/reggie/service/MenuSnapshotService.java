@@ -0,0 +1,26 @@
+package com.itheima.reggie.service;
+
+import com.itheima.reggie.dto.MenuSnapshot;
+
+public interface MenuSnapshotService {
+
+    /**
+     * 获取当前版本的菜单快照，优先从缓存中获取，没有则查询数据库生成
+     */
+    MenuSnapshot getSnapshot();
+
+    /**
+     * 获取指定版本的菜单快照，优先从缓存中获取，没有则查询数据库生成
+     */
+    MenuSnapshot getSnapshot(long version);
+
+    /**
+     * 本节点已知的最新菜单版本号，用于在读取快照之前判断客户端缓存是否仍然有效
+     */
+    long getCurrentVersion();
+
+    /**
+     * 递增菜单版本号，通知所有节点切换到新版本的菜单快照并重新加载价格表，在管理端修改分类、菜品、套餐后调用
+     */
+    void bumpVersion();
+}
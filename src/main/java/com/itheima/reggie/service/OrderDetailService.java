@@ -3,10 +3,20 @@ package com.itheima.reggie.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.itheima.reggie.entity.OrderDetail;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface OrderDetailService extends IService<OrderDetail> {
 
     List<OrderDetail> getDataByOrderIDAsList(Long orderId);
 
+    /**
+     * 一次性查询多个订单的明细
+     *
+     * @param orderIds 订单id集合
+     * @return key为订单id，value为该订单的明细
+     */
+    Map<Long, List<OrderDetail>> getDataByOrderIDsAsMap(Collection<Long> orderIds);
+
 }
@@ -2,8 +2,14 @@ package com.itheima.reggie.service;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.itheima.reggie.common.CursorPage;
+import com.itheima.reggie.dto.OrderStatusChangeResult;
+import com.itheima.reggie.dto.PendingOrder;
 import com.itheima.reggie.entity.Orders;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface OrderService extends IService<Orders> {
 
     /**
@@ -13,5 +19,50 @@ public interface OrderService extends IService<Orders> {
      */
     void submit(Orders orders);
 
-    Page<Orders> getDataAsPage(int page, int pageSize, Long number, String beginTime, String endTime);
+    /**
+     * 校验下单数据，并组装订单与订单明细(不写入订单)
+     * <p>
+     * 购物车中的价格已变化且策略为REJECT时，会先更新购物车中的金额再拒绝下单，因此不能在下单事务中调用
+     *
+     * @param orders 用户提交的订单信息
+     * @return 等待写入的订单，订单id已经生成
+     */
+    PendingOrder prepare(Orders orders);
+
+    /**
+     * 在一个事务中写入多个订单及其明细，并删除对应的购物车数据
+     *
+     * @param pendingOrders 等待写入的订单
+     */
+    void persist(List<PendingOrder> pendingOrders);
+
+    Page<Orders> getDataAsPage(int page, int pageSize, String number, String beginTime, String endTime);
+
+    /**
+     * 按下单时间倒序游标分页查询订单，不查询总条数
+     *
+     * @param after    上一页返回的游标，为空时查询第一页
+     * @param pageSize 每页条数
+     */
+    CursorPage<Orders> getDataAsCursorPage(String after, int pageSize, String number, String beginTime, String endTime);
+
+    /**
+     * 按下单时间倒序游标分页查询某个用户的订单，不查询总条数
+     *
+     * @param userId   用户id
+     * @param after    上一页返回的游标，为空时查询第一页
+     * @param pageSize 每页条数
+     */
+    CursorPage<Orders> getDataByUserIDAsCursorPage(Long userId, String after, int pageSize);
+
+    /**
+     * 批量修改订单状态，只允许按照订单状态机的规则流转
+     * <p>
+     * 每个订单单独判断能否修改，部分订单失败不影响其他订单
+     *
+     * @param ids    订单id
+     * @param status 目标状态
+     * @return 每个订单的修改结果，顺序与ids一致(重复的id只保留一个)
+     */
+    List<OrderStatusChangeResult> changeStatus(Collection<Long> ids, Integer status);
 }
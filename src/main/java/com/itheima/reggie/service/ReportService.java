@@ -0,0 +1,40 @@
+package com.itheima.reggie.service;
+
+import com.itheima.reggie.dto.SalesCategoryStat;
+import com.itheima.reggie.dto.SalesItemStat;
+import com.itheima.reggie.dto.SalesPeriodStat;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 销售报表，数据全部来自销售汇总表
+ */
+public interface ReportService {
+
+    /**
+     * 按天统计订单数与营业额
+     *
+     * @param begin 开始日期(包含)
+     * @param end   结束日期(包含)
+     */
+    List<SalesPeriodStat> getDailyStats(LocalDate begin, LocalDate end);
+
+    /**
+     * 按小时统计某一天的订单数与营业额
+     */
+    List<SalesPeriodStat> getHourlyStats(LocalDate date);
+
+    /**
+     * 按菜品、套餐统计份数与金额，按金额倒序
+     *
+     * @param itemType 1菜品，2套餐，为空时统计全部
+     * @param limit    最多返回的条数
+     */
+    List<SalesItemStat> getItemStats(LocalDate begin, LocalDate end, Integer itemType, int limit);
+
+    /**
+     * 按分类统计份数与金额，按金额倒序
+     */
+    List<SalesCategoryStat> getCategoryStats(LocalDate begin, LocalDate end);
+}
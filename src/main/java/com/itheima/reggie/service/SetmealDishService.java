@@ -3,8 +3,17 @@ package com.itheima.reggie.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.itheima.reggie.entity.SetmealDish;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface SetmealDishService extends IService<SetmealDish> {
     List<SetmealDish> getDataBySetmealIdAsList(Long setmealId);
+
+    /**
+     * 查询包含指定菜品的所有在售套餐名称
+     *
+     * @param dishIds 菜品id集合
+     * @return 在售套餐名称，没有则返回空列表
+     */
+    List<String> getOnSaleSetmealNamesByDishIDs(Collection<Long> dishIds);
 }
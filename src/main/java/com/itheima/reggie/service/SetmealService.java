@@ -5,7 +5,9 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.itheima.reggie.dto.SetmealDto;
 import com.itheima.reggie.entity.Setmeal;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 public interface SetmealService extends IService<Setmeal> {
 
@@ -41,4 +43,12 @@ public interface SetmealService extends IService<Setmeal> {
     List<Setmeal> getDataByCategoryIDAndStatusAsList(Setmeal conditionWrapper);
 
     Page<Setmeal> getDataByNameAsPage(int page, int pageSize, String name);
+
+    /**
+     * 查询套餐所属的分类id，用于在修改套餐后删除对应分类的缓存
+     *
+     * @param ids 套餐id集合
+     * @return 分类id集合
+     */
+    Set<Long> getCategoryIDsBySetmealIDs(Collection<Long> ids);
 }
@@ -1,10 +1,16 @@
 package com.itheima.reggie.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.itheima.reggie.dto.ShoppingCartDelta;
 import com.itheima.reggie.entity.ShoppingCart;
 
 import java.util.List;
 
+/**
+ * 购物车，数据的存储方式见{@link com.itheima.reggie.cart.CartStore}
+ * <p>
+ * 继承自IService的方法直接操作shopping_cart表，使用Redis保存购物车时不要通过这些方法读写购物车
+ */
 public interface ShoppingCartService extends IService<ShoppingCart> {
     /**
      * 根据用户id和菜品id/套餐id查询购物车数据,
@@ -14,4 +20,41 @@ public interface ShoppingCartService extends IService<ShoppingCart> {
     List<ShoppingCart> getDataByUserIDAsList(Long userId);
 
     void removeDataByUserID(Long userId);
+
+    /**
+     * 当前用户购物车中的商品数量加1，没有该商品时加入购物车
+     *
+     * @return 修改后的购物车数据
+     */
+    ShoppingCart addItem(ShoppingCart item);
+
+    /**
+     * 当前用户购物车中的商品数量减1，减到0时删除
+     *
+     * @return 修改后的购物车数据，已删除时number为0；购物车中没有该商品时返回null
+     */
+    ShoppingCart subItem(ShoppingCart item);
+
+    /**
+     * 一次修改当前用户购物车中多个商品的数量，同一个商品的多次修改会先合并
+     *
+     * @param deltas 商品及其数量的变化
+     * @return 修改后的购物车
+     */
+    List<ShoppingCart> applyDeltas(List<ShoppingCartDelta> deltas);
+
+    /**
+     * 更新购物车中商品的金额
+     */
+    void updateAmounts(Long userId, List<ShoppingCart> items);
+
+    /**
+     * 下单成功后删除已下单的购物车数据，可以包含多个用户的数据
+     */
+    void removeOrderedItems(List<ShoppingCart> orderedItems);
+
+    /**
+     * 将删除的购物车数据加回购物车(下单失败时)，可以包含多个用户的数据
+     */
+    void restoreItems(List<ShoppingCart> items);
 }
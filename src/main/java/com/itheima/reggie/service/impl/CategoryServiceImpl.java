@@ -13,7 +13,11 @@ import com.itheima.reggie.service.SetmealService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 public class CategoryServiceImpl extends ServiceImpl<CategoryMapper, Category> implements CategoryService {
@@ -82,5 +86,15 @@ public class CategoryServiceImpl extends ServiceImpl<CategoryMapper, Category> i
                 .page(categoryPage);
     }
 
+    @Override
+    public Map<Long, String> getNamesByIDsAsMap(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) return Collections.emptyMap();
+        return lambdaQuery()
+                .select(Category::getId, Category::getName)
+                .in(Category::getId, ids)
+                .list()
+                .stream()
+                .collect(Collectors.toMap(Category::getId, Category::getName));
+    }
 
 }
@@ -6,6 +6,28 @@ import com.itheima.reggie.mapper.DishFlavorMapper;
 import com.itheima.reggie.service.DishFlavorService;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 @Service
 public class DishFlavorServiceImpl extends ServiceImpl<DishFlavorMapper, DishFlavor> implements DishFlavorService {
+
+    /**
+     * 使用一条 dish_id IN (...) 查询代替逐个菜品查询口味，再在内存中按菜品id分组
+     *
+     * @param dishIds 菜品id集合
+     */
+    @Override
+    public Map<Long, List<DishFlavor>> getDataByDishIDsAsMap(Collection<Long> dishIds) {
+        // IN () 为非法SQL，没有菜品时直接返回空结果
+        if (dishIds == null || dishIds.isEmpty()) return Collections.emptyMap();
+        return lambdaQuery()
+                .in(DishFlavor::getDishId, dishIds)
+                .list()
+                .stream()
+                .collect(Collectors.groupingBy(DishFlavor::getDishId));
+    }
 }
@@ -1,24 +1,28 @@
 package com.itheima.reggie.service.impl;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.StringUtils;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.itheima.reggie.common.CursorPage;
 import com.itheima.reggie.dto.DishDto;
 import com.itheima.reggie.entity.Dish;
 import com.itheima.reggie.entity.DishFlavor;
-import com.itheima.reggie.entity.Setmeal;
-import com.itheima.reggie.entity.SetmealDish;
 import com.itheima.reggie.exception.BusinessExceptionEnum;
 import com.itheima.reggie.mapper.DishMapper;
 import com.itheima.reggie.service.*;
+import com.itheima.reggie.utils.FullTextSearchUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -26,7 +30,6 @@ import java.util.stream.Collectors;
 public class DishServiceImpl extends ServiceImpl<DishMapper, Dish> implements DishService {
 
     private final DishFlavorService dishFlavorService;
-    private final SetmealService setmealService;
     private final SetmealDishService setmealDishService;
     //TODO DishService和CategoryService形成了循环依赖，需要解决
     // 目前暂时的解决方案是使用@Autowired注解，使用Spring自己的三级缓存机制解决循环依赖
@@ -48,9 +51,8 @@ public class DishServiceImpl extends ServiceImpl<DishMapper, Dish> implements Di
     @Autowired
     private CategoryService categoryService;
 
-    public DishServiceImpl(DishFlavorService dishFlavorService, SetmealService setmealService, SetmealDishService setmealDishService) {
+    public DishServiceImpl(DishFlavorService dishFlavorService, SetmealDishService setmealDishService) {
         this.dishFlavorService = dishFlavorService;
-        this.setmealService = setmealService;
         this.setmealDishService = setmealDishService;
     }
 
@@ -119,26 +121,15 @@ public class DishServiceImpl extends ServiceImpl<DishMapper, Dish> implements Di
     @Override
     public void updateStatus(Integer status, List<Long> ids) {
         // 当菜品在一个起售中的套餐中时，无法进行停售操作，提示用户需要先停售套餐
-        // 1. 查询套餐表中正在起售的套餐
-        // 2. 根据起售的套餐id查询 套餐菜品关联表，得到所有的在起售套餐中的菜品id
-        // 3. 判断：如果前端传递的菜品id中包含了在起售套餐中的菜品id，则说明这个菜品在起售中的套餐中，无法进行停售操作
+        // 通过一次连接查询找出包含这些菜品的全部在售套餐，查询次数不随套餐数量与菜品数量增长，并一次性提示所有需要先停售的套餐
         if (status == 0) {
-            LambdaQueryWrapper<Setmeal> setmealOnSale = new LambdaQueryWrapper<>();
-            setmealOnSale.eq(Setmeal::getStatus, 1);
-            setmealService.list(setmealOnSale).stream().map(Setmeal::getId).forEach(setmealId -> {
-                List<SetmealDish> onSaleSetmealDish = setmealDishService
-                        .lambdaQuery()
-                        .eq(SetmealDish::getSetmealId, setmealId)
-                        .list();
-                onSaleSetmealDish.stream().map(SetmealDish::getDishId).forEach(onSaleDishID -> {
-                    if (ids.contains(onSaleDishID)) {
-//                        throw new ObjectStillOnStockException("所要停售的部分菜品目前还在其他套餐中进行贩卖中，无法停售，请考虑先停售套餐");
-                        throw BusinessExceptionEnum
-                                .OBJECT_STILL_ON_STOCK
-                                .toExceptionWithDetail("所要停售的部分菜品目前还在其他套餐中进行贩卖中，无法停售，请考虑先停售套餐");
-                    }
-                });
-            });
+            List<String> onSaleSetmealNames = setmealDishService.getOnSaleSetmealNamesByDishIDs(ids);
+            if (!onSaleSetmealNames.isEmpty()) {
+                throw BusinessExceptionEnum
+                        .OBJECT_STILL_ON_STOCK
+                        .toExceptionWithDetail("所要停售的部分菜品目前还在以下套餐中进行贩卖中，无法停售，请考虑先停售套餐："
+                                + String.join("、", onSaleSetmealNames));
+            }
         }
 
         //正常情况下的停售与起售菜品操作
@@ -175,6 +166,16 @@ public class DishServiceImpl extends ServiceImpl<DishMapper, Dish> implements Di
      */
     @Override
     public void getDishPage(Page<Dish> pageWrapper, String queryName) {
+        if (FullTextSearchUtils.isSearchable(queryName)) {
+            // 按名称搜索时使用全文索引：先按相关度分页查询id，再根据id查询完整数据
+            Page<Long> idPage = baseMapper.selectIdPageByName(
+                    new Page<>(pageWrapper.getCurrent(), pageWrapper.getSize()), FullTextSearchUtils.toPhrase(queryName));
+            List<Long> ids = idPage.getRecords();
+            pageWrapper.setTotal(idPage.getTotal());
+            pageWrapper.setRecords(ids.isEmpty() ? new ArrayList<>() : FullTextSearchUtils.sortByIds(listByIds(ids), ids, Dish::getId));
+            return;
+        }
+        // 没有关键字，或关键字短于ngram分词长度无法使用全文索引时，使用普通查询
         lambdaQuery()
                 .like(StringUtils.isNotBlank(queryName), Dish::getName, queryName)
                 .eq(Dish::getIsDeleted, 0)
@@ -182,6 +183,28 @@ public class DishServiceImpl extends ServiceImpl<DishMapper, Dish> implements Di
                 .page(pageWrapper);
     }
 
+    @Override
+    public CursorPage<Dish> getDishCursorPage(String after, int pageSize, String queryName) {
+        pageSize = CursorPage.checkPageSize(pageSize);
+        CursorPage.Cursor cursor = CursorPage.parse(after);
+        boolean searchable = FullTextSearchUtils.isSearchable(queryName);
+        // 多查询一条用于判断是否还有下一页，且不执行COUNT查询
+        Page<Dish> dishPage = new Page<>(1, pageSize + 1, false);
+        lambdaQuery()
+                // 游标分页按更新时间排序，名称只作为过滤条件，不按相关度排序
+                .apply(searchable, "MATCH(name) AGAINST({0} IN BOOLEAN MODE)",
+                        searchable ? FullTextSearchUtils.toPhrase(queryName) : null)
+                .like(!searchable && StringUtils.isNotBlank(queryName), Dish::getName, queryName)
+                .eq(Dish::getIsDeleted, 0)
+                // 从上一页最后一条之后开始: (update_time, id) < (游标时间, 游标id)
+                .and(cursor != null, wrapper -> wrapper
+                        .lt(Dish::getUpdateTime, cursor.getTime())
+                        .or(w -> w.eq(Dish::getUpdateTime, cursor.getTime()).lt(Dish::getId, cursor.getId())))
+                .orderByDesc(Dish::getUpdateTime, Dish::getId)
+                .page(dishPage);
+        return CursorPage.of(dishPage.getRecords(), pageSize, Dish::getUpdateTime, Dish::getId);
+    }
+
     /**
      * 将菜品分页数据转为dto分页数据，dto中增加了口味数据与分类名称
      *
@@ -192,17 +215,19 @@ public class DishServiceImpl extends ServiceImpl<DishMapper, Dish> implements Di
     public Page<DishDto> convertToDishDtoPage(Page<Dish> dishPage) {
         Page<DishDto> dishDtoPage = new Page<>();
         BeanUtils.copyProperties(dishPage, dishDtoPage, "records");
-        List<DishDto> dishDtoList = dishPage.getRecords().stream().map(dish -> {
-            DishDto dishDto = new DishDto();
-            BeanUtils.copyProperties(dish, dishDto);
-            dishDto.setCategoryName(categoryService.getById(dish.getCategoryId()).getName());
-            dishDto.setFlavors(dishFlavorService.lambdaQuery().eq(DishFlavor::getDishId, dish.getId()).list());
-            return dishDto;
-        }).collect(Collectors.toList());
-        dishDtoPage.setRecords(dishDtoList);
+        dishDtoPage.setRecords(convertToDishDtoListWithCategoryName(dishPage.getRecords()));
         return dishDtoPage;
     }
 
+    @Override
+    public List<DishDto> convertToDishDtoListWithCategoryName(List<Dish> dishList) {
+        // 分类名称与口味数据各用一条IN查询批量获取，再在内存中组装，避免每行菜品各查询两次数据库(N+1问题)
+        Set<Long> categoryIds = dishList.stream().map(Dish::getCategoryId).collect(Collectors.toSet());
+        Map<Long, String> categoryNames = categoryService.getNamesByIDsAsMap(categoryIds);
+        List<DishDto> dishDtoList = convertToDishDtoList(dishList);
+        dishDtoList.forEach(dishDto -> dishDto.setCategoryName(categoryNames.get(dishDto.getCategoryId())));
+        return dishDtoList;
+    }
 
     /**
      * 根据分类查询菜品信息（同时根据菜品自身的sort属性与更新时间信息排序）
@@ -228,6 +253,18 @@ public class DishServiceImpl extends ServiceImpl<DishMapper, Dish> implements Di
                 .list();
     }
 
+    @Override
+    public Set<Long> getCategoryIDsByDishIDs(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) return new HashSet<>();
+        return lambdaQuery()
+                .select(Dish::getCategoryId)
+                .in(Dish::getId, ids)
+                .list()
+                .stream()
+                .map(Dish::getCategoryId)
+                .collect(Collectors.toSet());
+    }
+
     /**
      * 将菜品信息转为DTO，dto中添加了口味信息
      *
@@ -236,10 +273,12 @@ public class DishServiceImpl extends ServiceImpl<DishMapper, Dish> implements Di
      */
     @Override
     public List<DishDto> convertToDishDtoList(List<Dish> dishList) {
+        List<Long> dishIds = dishList.stream().map(Dish::getId).collect(Collectors.toList());
+        Map<Long, List<DishFlavor>> flavorsByDishId = dishFlavorService.getDataByDishIDsAsMap(dishIds);
         return dishList.stream().map(dish -> {
             DishDto dishDto = new DishDto();
             BeanUtils.copyProperties(dish, dishDto);
-            dishDto.setFlavors(dishFlavorService.lambdaQuery().eq(DishFlavor::getDishId, dish.getId()).list());
+            dishDto.setFlavors(flavorsByDishId.getOrDefault(dish.getId(), new ArrayList<>()));
             return dishDto;
         }).collect(Collectors.toList());
     }
@@ -5,14 +5,28 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.itheima.reggie.entity.Employee;
 import com.itheima.reggie.mapper.EmployeeMapper;
 import com.itheima.reggie.service.EmployeeService;
+import com.itheima.reggie.utils.FullTextSearchUtils;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Service
 public class EmployeeServiceImpl extends ServiceImpl<EmployeeMapper, Employee> implements EmployeeService {
 
     @Override
     public Page<Employee> getDataByNameAsPage(int page, int pageSize, String name) {
         Page<Employee> employeePage = new Page<>(page, pageSize);
+        if (FullTextSearchUtils.isSearchable(name)) {
+            // 按名称搜索时使用全文索引：先按相关度分页查询id，再根据id查询完整数据
+            Page<Long> idPage = baseMapper.selectIdPageByName(
+                    new Page<>(employeePage.getCurrent(), employeePage.getSize()), FullTextSearchUtils.toPhrase(name));
+            List<Long> ids = idPage.getRecords();
+            employeePage.setTotal(idPage.getTotal());
+            employeePage.setRecords(ids.isEmpty() ? new ArrayList<>() : FullTextSearchUtils.sortByIds(listByIds(ids), ids, Employee::getId));
+            return employeePage;
+        }
+        // 没有关键字，或关键字短于ngram分词长度无法使用全文索引时，使用普通查询
         lambdaQuery().like(name != null, Employee::getName, name).page(employeePage);
         return employeePage;
     }
@@ -0,0 +1,174 @@
+package com.itheima.reggie.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.itheima.reggie.common.JacksonObjectMapper;
+import com.itheima.reggie.common.R;
+import com.itheima.reggie.dto.DishDto;
+import com.itheima.reggie.dto.MenuDto;
+import com.itheima.reggie.dto.MenuSnapshot;
+import com.itheima.reggie.entity.Category;
+import com.itheima.reggie.entity.Dish;
+import com.itheima.reggie.entity.Setmeal;
+import com.itheima.reggie.order.PriceTable;
+import com.itheima.reggie.service.CategoryService;
+import com.itheima.reggie.service.DishService;
+import com.itheima.reggie.service.MenuSnapshotService;
+import com.itheima.reggie.service.SetmealService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 菜单快照的缓存key中包含版本号(v{版本号})：版本号递增后读取的是新的key，
+ * 递增之前就开始生成的快照即使在删除缓存之后才写入，也只会写入旧版本的key，不会再被读取
+ * <p>
+ * 当前版本号保存在内存中，由bumpVersion与菜单修改通知更新，另外定时读取Redis作为通知丢失时的兜底，
+ * 读取快照时不需要访问Redis
+ */
+@Service
+@Slf4j
+public class MenuSnapshotServiceImpl implements MenuSnapshotService, MessageListener {
+
+    public static final String CACHE_NAME = "menuSnapshot";
+    private static final String CACHE_KEY_PREFIX = "v";
+    public static final String VERSION_KEY = "reggie:menu:version";
+
+    private final CategoryService categoryService;
+    private final DishService dishService;
+    private final SetmealService setmealService;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final CacheManager cacheManager;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+    private final JacksonObjectMapper objectMapper = new JacksonObjectMapper();
+
+    /**
+     * 本节点已知的最新版本号，-1表示尚未读取
+     */
+    private final AtomicLong currentVersion = new AtomicLong(-1);
+
+    public MenuSnapshotServiceImpl(CategoryService categoryService, DishService dishService, SetmealService setmealService,
+                                   StringRedisTemplate stringRedisTemplate, CacheManager cacheManager,
+                                   RedisMessageListenerContainer redisMessageListenerContainer) {
+        this.categoryService = categoryService;
+        this.dishService = dishService;
+        this.setmealService = setmealService;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheManager = cacheManager;
+        this.redisMessageListenerContainer = redisMessageListenerContainer;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(PriceTable.CHANNEL));
+    }
+
+    /**
+     * 菜单修改通知，消息内容为新的版本号
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            advanceVersion(Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8)));
+        } catch (NumberFormatException e) {
+            log.warn("无法解析菜单修改通知", e);
+        }
+    }
+
+    /**
+     * 定时读取Redis中的版本号
+     */
+    @Scheduled(fixedDelayString = "${project.cache.menu-version-check-millis}")
+    public void checkVersion() {
+        try {
+            advanceVersion(readVersion());
+        } catch (Exception e) {
+            log.warn("读取菜单版本号失败", e);
+        }
+    }
+
+    /**
+     * 快照保存在二级缓存中，本地缓存命中时不会访问Redis与数据库
+     */
+    @Override
+    public MenuSnapshot getSnapshot() {
+        return getSnapshot(getCurrentVersion());
+    }
+
+    @Override
+    public MenuSnapshot getSnapshot(long version) {
+        return getCache().get(CACHE_KEY_PREFIX + version, () -> buildSnapshot(version));
+    }
+
+    @Override
+    public long getCurrentVersion() {
+        long version = currentVersion.get();
+        return version < 0 ? advanceVersion(readVersion()) : version;
+    }
+
+    @Override
+    public void bumpVersion() {
+        Long version = stringRedisTemplate.opsForValue().increment(VERSION_KEY);
+        advanceVersion(version);
+        // 旧版本的快照不会再被读取，删除以释放内存，二级缓存会将删除操作广播给其他节点
+        getCache().evict(CACHE_KEY_PREFIX + (version - 1));
+        // 通知所有节点切换到新版本的快照，并重新加载结算使用的价格表
+        stringRedisTemplate.convertAndSend(PriceTable.CHANNEL, String.valueOf(version));
+    }
+
+    /**
+     * 版本号只增不减，先后收到的通知顺序颠倒时不会回退
+     *
+     * @return 更新后的版本号
+     */
+    private long advanceVersion(long version) {
+        return currentVersion.accumulateAndGet(version, Math::max);
+    }
+
+    private long readVersion() {
+        String versionInRedis = stringRedisTemplate.opsForValue().get(VERSION_KEY);
+        return versionInRedis == null ? 0L : Long.parseLong(versionInRedis);
+    }
+
+    /**
+     * 在读取到版本号之后才查询数据：生成期间菜单被修改时，快照中的数据只会比版本号更新，不会更旧
+     */
+    private MenuSnapshot buildSnapshot(long version) throws JsonProcessingException {
+        List<Category> categories = categoryService.getCategoryAsList(new Category());
+        Map<Long, String> categoryNames = categories.stream()
+                .collect(Collectors.toMap(Category::getId, Category::getName));
+        // 不指定分类即查询全部在售菜品
+        List<DishDto> dishes = dishService.convertToDishDtoList(dishService.getDishListByCategory(new Dish()));
+        dishes.forEach(dishDto -> dishDto.setCategoryName(categoryNames.get(dishDto.getCategoryId())));
+        Setmeal setmealCondition = new Setmeal();
+        setmealCondition.setStatus(1);
+        List<Setmeal> setmeals = setmealService.getDataByCategoryIDAndStatusAsList(setmealCondition);
+
+        MenuDto menuDto = new MenuDto();
+        menuDto.setVersion(version);
+        menuDto.setCategories(categories);
+        menuDto.setDishes(dishes);
+        menuDto.setSetmeals(setmeals);
+        byte[] body = objectMapper.writeValueAsBytes(R.success(menuDto));
+        log.info("生成菜单快照，版本号:{}，大小:{}字节", version, body.length);
+        return new MenuSnapshot(version, body);
+    }
+
+    private Cache getCache() {
+        return Objects.requireNonNull(cacheManager.getCache(CACHE_NAME));
+    }
+}
@@ -4,15 +4,45 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.itheima.reggie.entity.OrderDetail;
 import com.itheima.reggie.mapper.OrderDetailMapper;
 import com.itheima.reggie.service.OrderDetailService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 public class OrderDetailServiceImpl extends ServiceImpl<OrderDetailMapper, OrderDetail> implements OrderDetailService {
 
+    @Value("${project.order.archive.enabled}")
+    private boolean archiveEnabled;
+
     @Override
     public List<OrderDetail> getDataByOrderIDAsList(Long orderId) {
         return lambdaQuery().eq(OrderDetail::getOrderId, orderId).list();
     }
-}
\ No newline at end of file
+
+    @Override
+    public Map<Long, List<OrderDetail>> getDataByOrderIDsAsMap(Collection<Long> orderIds) {
+        if (orderIds == null || orderIds.isEmpty()) return Collections.emptyMap();
+        Map<Long, List<OrderDetail>> orderDetailsByOrderId = lambdaQuery()
+                .in(OrderDetail::getOrderId, orderIds)
+                .list()
+                .stream()
+                .collect(Collectors.groupingBy(OrderDetail::getOrderId));
+        // 订单表中找不到明细的订单可能已经被归档，再到归档表中查询一次
+        if (archiveEnabled && orderDetailsByOrderId.size() < orderIds.size()) {
+            List<Long> missingOrderIds = orderIds.stream()
+                    .filter(orderId -> !orderDetailsByOrderId.containsKey(orderId))
+                    .collect(Collectors.toList());
+            baseMapper.selectArchivedByOrderIds(missingOrderIds)
+                    .forEach(orderDetail -> orderDetailsByOrderId
+                            .computeIfAbsent(orderDetail.getOrderId(), orderId -> new ArrayList<>())
+                            .add(orderDetail));
+        }
+        return orderDetailsByOrderId;
+    }
+}
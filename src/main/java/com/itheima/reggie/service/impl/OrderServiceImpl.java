@@ -1,45 +1,91 @@
 package com.itheima.reggie.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.itheima.reggie.common.BaseContext;
+import com.itheima.reggie.common.CursorPage;
+import com.itheima.reggie.dto.OrderEvent;
+import com.itheima.reggie.dto.OrderStatusChangeResult;
+import com.itheima.reggie.dto.PendingOrder;
 import com.itheima.reggie.entity.*;
+import com.itheima.reggie.exception.UnclassifiedBusinessException;
+import com.itheima.reggie.idgen.DailyOrderNumberGenerator;
+import com.itheima.reggie.idgen.SnowflakeIdGenerator;
 import com.itheima.reggie.mapper.OrderMapper;
+import com.itheima.reggie.order.OrderArchiver;
+import com.itheima.reggie.order.OrderEventHub;
+import com.itheima.reggie.order.OrderStatus;
+import com.itheima.reggie.order.PriceTable;
+import com.itheima.reggie.order.StalePricePolicy;
+import com.itheima.reggie.report.SalesRollupRecorder;
 import com.itheima.reggie.service.*;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class OrderServiceImpl extends ServiceImpl<OrderMapper, Orders> implements OrderService {
 
+    /**
+     * 一次最多修改状态的订单数，避免IN列表过长
+     */
+    private static final int MAX_STATUS_BATCH_SIZE = 1000;
+
     private final ShoppingCartService shoppingCartService;
     private final UserService userService;
     private final AddressBookService addressBookService;
     private final OrderDetailService orderDetailService;
+    private final SnowflakeIdGenerator snowflakeIdGenerator;
+    private final DailyOrderNumberGenerator dailyOrderNumberGenerator;
+    private final OrderArchiver orderArchiver;
+    private final OrderEventHub orderEventHub;
+    private final SalesRollupRecorder salesRollupRecorder;
+    private final PriceTable priceTable;
+    private final TransactionTemplate transactionTemplate;
 
-    public OrderServiceImpl(ShoppingCartService shoppingCartService, UserService userService, AddressBookService addressBookService, OrderDetailService orderDetailService) {
+    @Value("${project.order.pricing.stale-cart-policy}")
+    private StalePricePolicy stalePricePolicy;
+
+    public OrderServiceImpl(ShoppingCartService shoppingCartService, UserService userService, AddressBookService addressBookService, OrderDetailService orderDetailService,
+                            SnowflakeIdGenerator snowflakeIdGenerator, DailyOrderNumberGenerator dailyOrderNumberGenerator,
+                            OrderArchiver orderArchiver, OrderEventHub orderEventHub, SalesRollupRecorder salesRollupRecorder,
+                            PriceTable priceTable, TransactionTemplate transactionTemplate) {
         this.shoppingCartService = shoppingCartService;
         this.userService = userService;
         this.addressBookService = addressBookService;
         this.orderDetailService = orderDetailService;
+        this.snowflakeIdGenerator = snowflakeIdGenerator;
+        this.dailyOrderNumberGenerator = dailyOrderNumberGenerator;
+        this.orderArchiver = orderArchiver;
+        this.orderEventHub = orderEventHub;
+        this.salesRollupRecorder = salesRollupRecorder;
+        this.priceTable = priceTable;
+        this.transactionTemplate = transactionTemplate;
     }
 
     /**
      * 用户下单,即向订单表和订单明细表插入数据,完成后删除购物车中的数据
+     * <p>
+     * 校验在事务之外进行：价格变化被拒绝下单时，购物车中更新后的金额不会随下单事务一起回滚
      */
-    @Transactional
     public void submit(Orders orders) {
+        PendingOrder pendingOrder = prepare(orders);
+        transactionTemplate.executeWithoutResult(status -> persist(Collections.singletonList(pendingOrder)));
+    }
+
+    @Override
+    public PendingOrder prepare(Orders orders) {
         //获得当前用户id
         Long userId = BaseContext.getCurrentId();
         //查询用户数据
@@ -50,16 +96,25 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Orders> implement
         // 异常情况
         if (addressBook == null) throw new RuntimeException("用户地址信息有误，不能下单");
         //查询当前用户的购物车数据
-        List<ShoppingCart> shoppingCarts = shoppingCartService.lambdaQuery().eq(ShoppingCart::getUserId, userId).list();
+        List<ShoppingCart> shoppingCarts = shoppingCartService.getDataByUserIDAsList(userId);
         if (shoppingCarts == null || shoppingCarts.size() == 0) throw new RuntimeException("购物车为空，不能下单");
 
 
-        //使用mybatis提供的工具类生成订单号
-        long orderId = IdWorker.getId();
-        // 计算订单总金额
-        AtomicInteger amount = new AtomicInteger(0);
-        //处理订单明细表: 订单明细表的数据来源于购物车表
-        List<OrderDetail> orderDetails = shoppingCarts.stream().map((item) -> {
+        //生成订单id，订单号单独按天生成，便于顾客与商家核对
+        long orderId = snowflakeIdGenerator.nextId();
+        // 订单总金额，以分为单位累加，避免精度损失
+        long amountInCents = 0;
+        List<ShoppingCart> staleCarts = new ArrayList<>();
+        //处理订单明细表: 订单明细表的数据来源于购物车表，单价来自价格表，不信任购物车中保存的金额
+        List<OrderDetail> orderDetails = new ArrayList<>(shoppingCarts.size());
+        for (ShoppingCart item : shoppingCarts) {
+            PriceTable.Price price = item.getDishId() != null ?
+                    priceTable.getDishPrice(item.getDishId()) : priceTable.getSetmealPrice(item.getSetmealId());
+            if (price == null) throw new UnclassifiedBusinessException(item.getName() + "已停售，请从购物车中移除后再下单");
+            if (item.getAmount() == null || item.getAmount().compareTo(price.getYuan()) != 0) {
+                item.setAmount(price.getYuan());
+                staleCarts.add(item);
+            }
             OrderDetail orderDetail = new OrderDetail();
             orderDetail.setOrderId(orderId);
             orderDetail.setNumber(item.getNumber());
@@ -68,22 +123,28 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Orders> implement
             orderDetail.setSetmealId(item.getSetmealId());
             orderDetail.setName(item.getName());
             orderDetail.setImage(item.getImage());
-            orderDetail.setAmount(item.getAmount());
+            orderDetail.setAmount(price.getYuan());
             // 计算订单总金额: 订单总金额 = 订单明细表中所有的金额(单价 乘于 份数)之和
-            amount.addAndGet(item.getAmount().multiply(new BigDecimal(item.getNumber())).intValue());
-            return orderDetail;
-        }).collect(Collectors.toList());
-        //向订单明细表插入数据，多条数据
-        orderDetailService.saveBatch(orderDetails);
+            amountInCents += price.getCents() * item.getNumber();
+            orderDetails.add(orderDetail);
+        }
+        if (!staleCarts.isEmpty()) {
+            if (stalePricePolicy == StalePricePolicy.REJECT) {
+                // 更新购物车中的金额，用户刷新购物车后即可看到当前价格
+                shoppingCartService.updateAmounts(userId, staleCarts);
+                throw new UnclassifiedBusinessException("购物车中有" + staleCarts.size() + "个商品的价格已变化，请确认后重新下单");
+            }
+            log.info("用户{}的购物车中有{}个商品按当前价格下单，价格表版本号:{}", userId, staleCarts.size(), priceTable.getVersion());
+        }
 
         //处理订单表
         orders.setId(orderId);
         orders.setOrderTime(LocalDateTime.now());
         orders.setCheckoutTime(LocalDateTime.now());
         orders.setStatus(2);
-        orders.setAmount(new BigDecimal(amount.get()));//总金额
+        orders.setAmount(BigDecimal.valueOf(amountInCents, 2));//总金额，单位为元
         orders.setUserId(userId);
-        orders.setNumber(String.valueOf(orderId));
+        orders.setNumber(dailyOrderNumberGenerator.next());
         orders.setUserName(user.getName());
         orders.setConsignee(addressBook.getConsignee());
         orders.setPhone(addressBook.getPhone());
@@ -92,23 +153,178 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Orders> implement
                 + (addressBook.getCityName() == null ? "" : addressBook.getCityName())
                 + (addressBook.getDistrictName() == null ? "" : addressBook.getDistrictName())
                 + (addressBook.getDetail() == null ? "" : addressBook.getDetail()));
-        //向订单表插入数据，一条数据
-        save(orders);
 
+        return new PendingOrder(orders, orderDetails, shoppingCarts);
+    }
 
+    /**
+     * 多个订单的明细、订单、购物车删除各用一条批量语句完成
+     */
+    @Override
+    @Transactional
+    public void persist(List<PendingOrder> pendingOrders) {
+        List<OrderDetail> orderDetails = new ArrayList<>();
+        List<Orders> ordersList = new ArrayList<>(pendingOrders.size());
+        List<ShoppingCart> shoppingCarts = new ArrayList<>();
+        Map<Long, List<OrderDetail>> detailsByOrderId = new HashMap<>();
+        for (PendingOrder pendingOrder : pendingOrders) {
+            orderDetails.addAll(pendingOrder.getOrderDetails());
+            detailsByOrderId.put(pendingOrder.getOrders().getId(), pendingOrder.getOrderDetails());
+            ordersList.add(pendingOrder.getOrders());
+            if (!pendingOrder.isCartRemoved()) shoppingCarts.addAll(pendingOrder.getShoppingCarts());
+        }
+        //向订单明细表插入数据，多条数据
+        orderDetailService.saveBatch(orderDetails);
+        //向订单表插入数据
+        saveBatch(ordersList);
         //清空购物车数据
-        shoppingCartService.remove(new LambdaQueryWrapper<ShoppingCart>().eq(ShoppingCart::getUserId, userId));
+        shoppingCartService.removeOrderedItems(shoppingCarts);
+        //事务提交后通知管理端，并计入销售汇总
+        orderEventHub.publishAfterCommit(OrderEvent.CREATED, ordersList);
+        salesRollupRecorder.recordCreatedAfterCommit(ordersList, detailsByOrderId);
     }
 
     @Override
-    public Page<Orders> getDataAsPage(int page, int pageSize, Long number, String beginTime, String endTime) {
+    public Page<Orders> getDataAsPage(int page, int pageSize, String number, String beginTime, String endTime) {
         Page<Orders> ordersPage = new Page<>(page, pageSize);
-        lambdaQuery()
-                .eq(number != null, Orders::getId, number) //订单号
+        LambdaQueryWrapper<Orders> queryWrapper = new LambdaQueryWrapper<Orders>()
+                .eq(StringUtils.hasText(number), Orders::getNumber, number) //订单号
                 //时间段，大于开始，小于结束
                 .gt(StringUtils.hasText(beginTime), Orders::getOrderTime, beginTime)
-                .lt(StringUtils.hasText(endTime), Orders::getOrderTime, endTime)
-                .page(ordersPage);
-        return ordersPage;
+                .lt(StringUtils.hasText(endTime), Orders::getOrderTime, endTime);
+        if (orderArchiver.isArchiveQueryNeeded(number, beginTime)) {
+            // 查询范围包含已归档的订单，总条数单独查询，分页查询中每张表只读取到本页为止
+            ordersPage.setSearchCount(false);
+            baseMapper.selectPageWithArchive(ordersPage, queryWrapper, ordersPage.offset() + ordersPage.getSize());
+            ordersPage.setTotal(baseMapper.countWithArchive(queryWrapper));
+            return ordersPage;
+        }
+        return page(ordersPage, queryWrapper);
+    }
+
+    @Override
+    public CursorPage<Orders> getDataAsCursorPage(String after, int pageSize, String number, String beginTime, String endTime) {
+        LambdaQueryWrapper<Orders> queryWrapper = new LambdaQueryWrapper<Orders>()
+                .eq(StringUtils.hasText(number), Orders::getNumber, number)
+                .gt(StringUtils.hasText(beginTime), Orders::getOrderTime, beginTime)
+                .lt(StringUtils.hasText(endTime), Orders::getOrderTime, endTime);
+        return getCursorPage(queryWrapper, orderArchiver.isArchiveQueryNeeded(number, beginTime), after, pageSize);
+    }
+
+    @Override
+    public CursorPage<Orders> getDataByUserIDAsCursorPage(Long userId, String after, int pageSize) {
+        // 依赖(user_id, order_time, id)索引，直接定位到该用户的订单中游标所在的位置
+        CursorPage.Cursor cursor = CursorPage.parse(after);
+        boolean includeArchive = cursor != null && orderArchiver.isArchiveQueryNeeded(cursor.getTime());
+        CursorPage<Orders> ordersPage = getCursorPage(new LambdaQueryWrapper<Orders>().eq(Orders::getUserId, userId),
+                includeArchive, after, pageSize);
+        if (includeArchive) return ordersPage;
+        // 近期订单不足一页，或这一页已经翻过归档时间线时，归档表中的订单可能属于这一页，同时查询归档表重新分页
+        List<Orders> records = ordersPage.getRecords();
+        LocalDateTime reached = ordersPage.getNext() == null || records.isEmpty()
+                ? LocalDateTime.MIN : records.get(records.size() - 1).getOrderTime();
+        if (!orderArchiver.isArchiveQueryNeeded(reached)) return ordersPage;
+        return getCursorPage(new LambdaQueryWrapper<Orders>().eq(Orders::getUserId, userId), true, after, pageSize);
+    }
+
+    /**
+     * 在查询条件的基础上按(order_time, id)倒序进行游标分页
+     *
+     * @param includeArchive 是否同时查询归档表
+     */
+    private CursorPage<Orders> getCursorPage(LambdaQueryWrapper<Orders> queryWrapper, boolean includeArchive,
+                                             String after, int pageSize) {
+        pageSize = CursorPage.checkPageSize(pageSize);
+        CursorPage.Cursor cursor = CursorPage.parse(after);
+        // 多查询一条用于判断是否还有下一页，且不执行COUNT查询
+        Page<Orders> ordersPage = new Page<>(1, pageSize + 1, false);
+        queryWrapper
+                // 从上一页最后一条之后开始: (order_time, id) < (游标时间, 游标id)，可以直接在索引上定位
+                .and(cursor != null, wrapper -> wrapper
+                        .lt(Orders::getOrderTime, cursor.getTime())
+                        .or(w -> w.eq(Orders::getOrderTime, cursor.getTime()).lt(Orders::getId, cursor.getId())))
+                // 同时查询归档表时由selectPageWithArchive在每张表内排序
+                .orderByDesc(!includeArchive, Orders::getOrderTime, Orders::getId);
+        if (includeArchive) {
+            baseMapper.selectPageWithArchive(ordersPage, queryWrapper, pageSize + 1);
+        } else {
+            page(ordersPage, queryWrapper);
+        }
+        return CursorPage.of(ordersPage.getRecords(), pageSize, Orders::getOrderTime, Orders::getId);
+    }
+
+    /**
+     * 在一个事务中完成：先按id顺序加锁查询订单的当前状态(SELECT ... FOR UPDATE)，过滤掉不允许流转的订单；
+     * 剩余订单按当前状态分组，每组使用一条 UPDATE ... WHERE id IN (...) AND status = 当前状态 完成修改。
+     * 查询到的状态在事务提交前不会被他人修改，因此每组更新的就是这些订单，只有本次确实修改了的订单才会推送事件、扣除销售汇总；
+     * 多人同时取消同一订单时，后执行的一方读取到的已经是取消状态，不会重复扣除
+     */
+    @Override
+    @Transactional
+    public List<OrderStatusChangeResult> changeStatus(Collection<Long> ids, Integer status) {
+        OrderStatus target = OrderStatus.of(status);
+        if (target == null) throw new UnclassifiedBusinessException("订单状态不正确");
+        if (ids == null || ids.isEmpty()) return new ArrayList<>();
+        List<Long> orderIds = ids.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        if (orderIds.size() > MAX_STATUS_BATCH_SIZE) {
+            throw new UnclassifiedBusinessException("一次最多修改" + MAX_STATUS_BATCH_SIZE + "个订单的状态");
+        }
+
+        // 只查询id与status两列，按id顺序加锁，避免并发修改同一批订单时死锁
+        Map<Long, Integer> currentStatus = lambdaQuery().select(Orders::getId, Orders::getStatus)
+                .in(Orders::getId, orderIds).orderByAsc(Orders::getId).last("FOR UPDATE").list()
+                .stream().collect(Collectors.toMap(Orders::getId, Orders::getStatus));
+
+        Map<Long, String> failures = new HashMap<>();
+        Map<OrderStatus, List<Long>> idsBySource = new EnumMap<>(OrderStatus.class);
+        for (Long id : orderIds) {
+            OrderStatus source = OrderStatus.of(currentStatus.get(id));
+            if (source == null) {
+                failures.put(id, "订单不存在");
+            } else if (source != target) {
+                // 已经是目标状态的订单视为修改成功，重复操作不会报错
+                if (target.getAllowedSources().contains(source)) {
+                    idsBySource.computeIfAbsent(source, key -> new ArrayList<>()).add(id);
+                } else {
+                    failures.put(id, "订单" + source.getDescription() + "，不能修改为" + target.getDescription());
+                }
+            }
+        }
+
+        List<Orders> changedOrders = new ArrayList<>();
+        idsBySource.forEach((source, sourceIds) -> {
+            int updated = baseMapper.update(null, new LambdaUpdateWrapper<Orders>()
+                    .set(Orders::getStatus, target.getCode())
+                    .in(Orders::getId, sourceIds)
+                    .eq(Orders::getStatus, source.getCode()));
+            if (updated != sourceIds.size()) {
+                // 已加锁的订单不应被他人修改，出现时回滚整个事务，不推送事件也不修改销售汇总
+                throw new IllegalStateException("订单状态修改数量不一致，预期" + sourceIds.size() + "个，实际" + updated + "个");
+            }
+            for (Long id : sourceIds) {
+                Orders changedOrder = new Orders();
+                changedOrder.setId(id);
+                changedOrder.setStatus(target.getCode());
+                changedOrders.add(changedOrder);
+            }
+        });
+        orderEventHub.publishAfterCommit(OrderEvent.STATUS_CHANGED, changedOrders);
+        if (target == OrderStatus.CANCELLED) recordCancelledSales(changedOrders);
+        log.info("订单状态修改为{}，成功{}个，失败{}个", target.getDescription(), orderIds.size() - failures.size(), failures.size());
+
+        return orderIds.stream()
+                .map(id -> new OrderStatusChangeResult(id, !failures.containsKey(id), failures.get(id)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 从销售汇总中扣除被取消的订单
+     */
+    private void recordCancelledSales(List<Orders> cancelledOrders) {
+        if (!salesRollupRecorder.isEnabled() || cancelledOrders.isEmpty()) return;
+        List<Long> ids = cancelledOrders.stream().map(Orders::getId).collect(Collectors.toList());
+        List<Orders> ordersList = lambdaQuery().select(Orders::getId, Orders::getOrderTime, Orders::getAmount)
+                .in(Orders::getId, ids).list();
+        salesRollupRecorder.recordCancelledAfterCommit(ordersList, orderDetailService.getDataByOrderIDsAsMap(ids));
     }
-}
\ No newline at end of file
+}
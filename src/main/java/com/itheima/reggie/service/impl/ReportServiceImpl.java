@@ -0,0 +1,76 @@
+package com.itheima.reggie.service.impl;
+
+import com.itheima.reggie.dto.SalesCategoryStat;
+import com.itheima.reggie.dto.SalesItemStat;
+import com.itheima.reggie.dto.SalesPeriodStat;
+import com.itheima.reggie.exception.UnclassifiedBusinessException;
+import com.itheima.reggie.service.ReportService;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * sales_hourly以整点为主键，sales_daily_item以(日期, 类型, id)为主键，查询都是主键上的范围扫描，
+ * 一年的数据也只有几千行，不再访问订单表
+ */
+@Service
+public class ReportServiceImpl implements ReportService {
+
+    /**
+     * 一次最多查询的天数
+     */
+    private static final int MAX_DAYS = 366;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public ReportServiceImpl(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<SalesPeriodStat> getDailyStats(LocalDate begin, LocalDate end) {
+        return jdbcTemplate.query("SELECT DATE_FORMAT(stat_hour, '%Y-%m-%d') period, SUM(order_count) order_count, SUM(amount) amount " +
+                        "FROM sales_hourly WHERE stat_hour >= :begin AND stat_hour < :end " +
+                        "GROUP BY DATE_FORMAT(stat_hour, '%Y-%m-%d') ORDER BY period",
+                rangeParams(begin, end), new BeanPropertyRowMapper<>(SalesPeriodStat.class));
+    }
+
+    @Override
+    public List<SalesPeriodStat> getHourlyStats(LocalDate date) {
+        return jdbcTemplate.query("SELECT DATE_FORMAT(stat_hour, '%Y-%m-%d %H:00') period, order_count, amount " +
+                        "FROM sales_hourly WHERE stat_hour >= :begin AND stat_hour < :end ORDER BY stat_hour",
+                rangeParams(date, date), new BeanPropertyRowMapper<>(SalesPeriodStat.class));
+    }
+
+    @Override
+    public List<SalesItemStat> getItemStats(LocalDate begin, LocalDate end, Integer itemType, int limit) {
+        MapSqlParameterSource params = rangeParams(begin, end).addValue("itemType", itemType).addValue("limit", limit);
+        return jdbcTemplate.query("SELECT item_type, item_id, MAX(name) name, MAX(category_id) category_id, " +
+                        "SUM(quantity) quantity, SUM(amount) amount FROM sales_daily_item " +
+                        "WHERE stat_date BETWEEN :beginDate AND :endDate" + (itemType == null ? "" : " AND item_type = :itemType") + " " +
+                        "GROUP BY item_type, item_id ORDER BY amount DESC LIMIT :limit",
+                params, new BeanPropertyRowMapper<>(SalesItemStat.class));
+    }
+
+    @Override
+    public List<SalesCategoryStat> getCategoryStats(LocalDate begin, LocalDate end) {
+        return jdbcTemplate.query("SELECT i.category_id, MAX(c.name) category_name, SUM(i.quantity) quantity, SUM(i.amount) amount " +
+                        "FROM sales_daily_item i LEFT JOIN category c ON c.id = i.category_id " +
+                        "WHERE i.stat_date BETWEEN :beginDate AND :endDate GROUP BY i.category_id ORDER BY amount DESC",
+                rangeParams(begin, end), new BeanPropertyRowMapper<>(SalesCategoryStat.class));
+    }
+
+    private static MapSqlParameterSource rangeParams(LocalDate begin, LocalDate end) {
+        if (begin == null || end == null || end.isBefore(begin)) throw new UnclassifiedBusinessException("日期范围不正确");
+        if (ChronoUnit.DAYS.between(begin, end) >= MAX_DAYS) throw new UnclassifiedBusinessException("一次最多查询" + MAX_DAYS + "天");
+        return new MapSqlParameterSource("beginDate", begin)
+                .addValue("endDate", end)
+                .addValue("begin", begin.atStartOfDay())
+                .addValue("end", end.plusDays(1).atStartOfDay());
+    }
+}
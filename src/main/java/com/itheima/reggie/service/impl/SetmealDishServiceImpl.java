@@ -7,6 +7,8 @@ import com.itheima.reggie.service.SetmealDishService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 @Service
@@ -18,4 +20,10 @@ public class SetmealDishServiceImpl extends ServiceImpl<SetmealDishMapper, Setme
                 .eq(setmealId != null, SetmealDish::getSetmealId, setmealId)
                 .list();
     }
+
+    @Override
+    public List<String> getOnSaleSetmealNamesByDishIDs(Collection<Long> dishIds) {
+        if (dishIds == null || dishIds.isEmpty()) return Collections.emptyList();
+        return baseMapper.selectOnSaleSetmealNamesByDishIds(dishIds);
+    }
 }
@@ -11,11 +11,17 @@ import com.itheima.reggie.exception.BusinessExceptionEnum;
 import com.itheima.reggie.mapper.SetmealMapper;
 import com.itheima.reggie.service.SetmealDishService;
 import com.itheima.reggie.service.SetmealService;
+import com.itheima.reggie.utils.FullTextSearchUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -112,6 +118,16 @@ public class SetmealServiceImpl extends ServiceImpl<SetmealMapper, Setmeal> impl
     @Override
     public Page<Setmeal> getDataByNameAsPage(int page, int pageSize, String name) {
         Page<Setmeal> setmealPage = new Page<>(page, pageSize);
+        if (FullTextSearchUtils.isSearchable(name)) {
+            // 按名称搜索时使用全文索引：先按相关度分页查询id，再根据id查询完整数据
+            Page<Long> idPage = baseMapper.selectIdPageByName(
+                    new Page<>(setmealPage.getCurrent(), setmealPage.getSize()), FullTextSearchUtils.toPhrase(name));
+            List<Long> ids = idPage.getRecords();
+            setmealPage.setTotal(idPage.getTotal());
+            setmealPage.setRecords(ids.isEmpty() ? new ArrayList<>() : FullTextSearchUtils.sortByIds(listByIds(ids), ids, Setmeal::getId));
+            return setmealPage;
+        }
+        // 没有关键字，或关键字短于ngram分词长度无法使用全文索引时，使用普通查询
         lambdaQuery()
                 .eq(Setmeal::getIsDeleted, 0)
                 .like(StringUtils.isNotBlank(name), Setmeal::getName, name)
@@ -120,4 +136,15 @@ public class SetmealServiceImpl extends ServiceImpl<SetmealMapper, Setmeal> impl
         return setmealPage;
     }
 
+    @Override
+    public Set<Long> getCategoryIDsBySetmealIDs(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) return new HashSet<>();
+        return lambdaQuery()
+                .select(Setmeal::getCategoryId)
+                .in(Setmeal::getId, ids)
+                .list()
+                .stream()
+                .map(Setmeal::getCategoryId)
+                .collect(Collectors.toSet());
+    }
 }
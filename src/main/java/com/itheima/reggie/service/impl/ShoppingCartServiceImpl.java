@@ -1,17 +1,41 @@
 package com.itheima.reggie.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.itheima.reggie.cart.CartStore;
 import com.itheima.reggie.common.BaseContext;
+import com.itheima.reggie.dto.ShoppingCartDelta;
 import com.itheima.reggie.entity.ShoppingCart;
+import com.itheima.reggie.exception.UnclassifiedBusinessException;
 import com.itheima.reggie.mapper.ShoppingCartMapper;
 import com.itheima.reggie.service.ShoppingCartService;
+import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 @Service
 public class ShoppingCartServiceImpl extends ServiceImpl<ShoppingCartMapper, ShoppingCart> implements ShoppingCartService {
 
+    /**
+     * 一次批量修改最多包含的商品种类数
+     */
+    private static final int MAX_BATCH_ITEMS = 100;
+    /**
+     * 一次批量修改中单个商品数量变化的上限
+     */
+    private static final int MAX_DELTA = 99;
+
+    private final CartStore cartStore;
+
+    public ShoppingCartServiceImpl(CartStore cartStore) {
+        this.cartStore = cartStore;
+    }
+
     /**
      * 根据用户id和菜品id/套餐id查询购物车数据
      *
@@ -19,27 +43,88 @@ public class ShoppingCartServiceImpl extends ServiceImpl<ShoppingCartMapper, Sho
      */
     @Override
     public ShoppingCart getShoppingCartByID(ShoppingCart conditionWrapper) {
-        return lambdaQuery()
-                .eq(ShoppingCart::getUserId, BaseContext.getCurrentId())
+        return cartStore.list(BaseContext.getCurrentId()).stream()
                 // 以下两个条件只会有一个成立,即查询的是菜品还是套餐
-                .eq(conditionWrapper.getDishId() != null, ShoppingCart::getDishId, conditionWrapper.getDishId())
-                .eq(conditionWrapper.getSetmealId() != null, ShoppingCart::getSetmealId, conditionWrapper.getSetmealId())
-                .one();
+                .filter(item -> conditionWrapper.getDishId() == null || Objects.equals(item.getDishId(), conditionWrapper.getDishId()))
+                .filter(item -> conditionWrapper.getSetmealId() == null || Objects.equals(item.getSetmealId(), conditionWrapper.getSetmealId()))
+                .findFirst()
+                .orElse(null);
     }
 
     @Override
     public List<ShoppingCart> getDataByUserIDAsList(Long userId) {
-        return lambdaQuery()
-                .eq(ShoppingCart::getUserId, userId)
-                .orderByAsc(ShoppingCart::getCreateTime)
-                .list();
+        return cartStore.list(userId);
     }
 
     @Override
     public void removeDataByUserID(Long userId) {
-        //SQL:delete from shopping_cart where user_id = ?
-        lambdaUpdate()
-                .eq(ShoppingCart::getUserId, userId)
-                .remove();
+        cartStore.clear(userId);
+    }
+
+    @Override
+    public ShoppingCart addItem(ShoppingCart item) {
+        return cartStore.add(BaseContext.getCurrentId(), item);
+    }
+
+    @Override
+    public ShoppingCart subItem(ShoppingCart item) {
+        return cartStore.sub(BaseContext.getCurrentId(), item);
+    }
+
+    /**
+     * 先将同一个商品的多次修改合并为一条，抵消为0的不再修改，合并后的修改在一个事务中完成
+     */
+    @Transactional
+    @Override
+    public List<ShoppingCart> applyDeltas(List<ShoppingCartDelta> deltas) {
+        Long userId = BaseContext.getCurrentId();
+        if (deltas == null || deltas.isEmpty()) return cartStore.list(userId);
+        if (deltas.size() > MAX_BATCH_ITEMS) throw new UnclassifiedBusinessException("一次最多修改" + MAX_BATCH_ITEMS + "种商品");
+        Map<String, ShoppingCartDelta> merged = new LinkedHashMap<>();
+        for (ShoppingCartDelta delta : deltas) {
+            if (delta.getDishId() == null && delta.getSetmealId() == null) {
+                throw new UnclassifiedBusinessException("购物车数据不完整");
+            }
+            if (delta.getDelta() == null || delta.getDelta() == 0) continue;
+            if (Math.abs(delta.getDelta()) > MAX_DELTA) throw new UnclassifiedBusinessException("一次修改的数量过多");
+            merged.merge(CartStore.itemKey(delta), delta, (previous, current) -> {
+                // 保留带有商品信息的一条(减少数量时只需要传dishId或setmealId)
+                ShoppingCartDelta result = previous.getName() != null ? previous : current;
+                result.setDelta(previous.getDelta() + current.getDelta());
+                return result;
+            });
+        }
+        List<ShoppingCartDelta> changes = new ArrayList<>(merged.size());
+        merged.values().forEach(delta -> {
+            if (delta.getDelta() != 0) changes.add(delta);
+        });
+        if (changes.isEmpty()) return cartStore.list(userId);
+        return cartStore.applyDeltas(userId, changes);
+    }
+
+    @Override
+    public void updateAmounts(Long userId, List<ShoppingCart> items) {
+        cartStore.updateAmounts(userId, items);
+    }
+
+    @Override
+    public void removeOrderedItems(List<ShoppingCart> orderedItems) {
+        cartStore.removeOrdered(orderedItems);
+    }
+
+    /**
+     * 按原来的数量加回，购物车中已有该商品时数量累加
+     */
+    @Transactional
+    @Override
+    public void restoreItems(List<ShoppingCart> items) {
+        Map<Long, List<ShoppingCartDelta>> deltasByUser = new LinkedHashMap<>();
+        for (ShoppingCart item : items) {
+            ShoppingCartDelta delta = new ShoppingCartDelta();
+            BeanUtils.copyProperties(item, delta);
+            delta.setDelta(item.getNumber());
+            deltasByUser.computeIfAbsent(item.getUserId(), userId -> new ArrayList<>()).add(delta);
+        }
+        deltasByUser.forEach(cartStore::applyDeltas);
     }
 }
@@ -0,0 +1,63 @@
+package com.itheima.reggie.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 名称搜索工具类，配合MySQL的FULLTEXT索引(ngram分词)使用
+ * <p>
+ * ngram分词器按ngram_token_size(默认为2)个字切分名称，例如"宫保鸡丁"会被切分为"宫保"、"保鸡"、"鸡丁"；
+ * 在BOOLEAN MODE下以双引号包裹的短语搜索，要求这些词在名称中连续出现，效果与 LIKE '%宫保鸡丁%' 一致，但可以使用索引
+ */
+public class FullTextSearchUtils {
+
+    /**
+     * 与MySQL的ngram_token_size保持一致，短于该长度的关键字无法通过全文索引搜索
+     */
+    public static final int NGRAM_TOKEN_SIZE = 2;
+
+    private FullTextSearchUtils() {
+    }
+
+    /**
+     * 判断关键字能否使用全文索引搜索，不能时调用方应退回到LIKE查询
+     *
+     * @param keyword 搜索关键字
+     */
+    public static boolean isSearchable(String keyword) {
+        return keyword != null && keyword.trim().length() >= NGRAM_TOKEN_SIZE;
+    }
+
+    /**
+     * 将关键字转换为BOOLEAN MODE下的短语
+     * <p>
+     * 关键字本身包含的双引号会被去掉，其余的布尔运算符在双引号内不起作用
+     *
+     * @param keyword 搜索关键字
+     */
+    public static String toPhrase(String keyword) {
+        return "\"" + keyword.trim().replace("\"", "") + "\"";
+    }
+
+    /**
+     * 按照搜索结果中id的顺序(即相关度顺序)排列查询到的数据
+     *
+     * @param records  根据id查询到的数据，顺序不确定
+     * @param rankedIds 按相关度排列的id
+     * @param idGetter 获取数据id的方法
+     */
+    public static <T> List<T> sortByIds(List<T> records, List<Long> rankedIds, Function<T, Long> idGetter) {
+        if (rankedIds.isEmpty()) return Collections.emptyList();
+        Map<Long, T> recordMap = records.stream().collect(Collectors.toMap(idGetter, Function.identity()));
+        List<T> sorted = new ArrayList<>(rankedIds.size());
+        for (Long id : rankedIds) {
+            T record = recordMap.get(id);
+            if (record != null) sorted.add(record);
+        }
+        return sorted;
+    }
+}
@@ -23,3 +23,12 @@ const editOrderDetail = (params) => {
     data: { ...params },
   });
 };
+
+// 批量派送、完成接口
+const editOrderStatusBatch = (params) => {
+  return $axios({
+    url: "/order/batch",
+    method: "put",
+    data: { ...params },
+  });
+};
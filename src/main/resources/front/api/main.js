@@ -51,6 +51,15 @@ function updateCartApi(data) {
   });
 }
 
+//批量修改购物车，data为[{dishId/setmealId, delta, ...商品信息}]，返回修改后的购物车
+function batchCartApi(data) {
+  return $axios({
+    url: "/shoppingCart/batch",
+    method: "post",
+    data,
+  });
+}
+
 //删除购物车的商品
 function clearCartApi() {
   return $axios({
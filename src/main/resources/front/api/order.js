@@ -1,8 +1,9 @@
-//提交订单
-function addOrderApi(data) {
+//提交订单，重试时使用同一个idempotencyKey，避免重复下单
+function addOrderApi(data, idempotencyKey) {
   return $axios({
     url: "/order/submit",
     method: "post",
+    headers: idempotencyKey ? { "Idempotency-Key": idempotencyKey } : {},
     data,
   });
 }
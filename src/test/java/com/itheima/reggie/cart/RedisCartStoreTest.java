@@ -0,0 +1,195 @@
+package com.itheima.reggie.cart;
+
+import com.itheima.reggie.common.JobLease;
+import com.itheima.reggie.dto.ShoppingCartDelta;
+import com.itheima.reggie.entity.ShoppingCart;
+import com.itheima.reggie.idgen.SnowflakeIdGenerator;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 在真实的Redis上执行RedisCartStore的Lua脚本：加减数量、批量修改、从表中加载、清空与同步到表
+ */
+class RedisCartStoreTest {
+
+    private static final long USER_ID = 1L;
+
+    private static RedisServer redisServer;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate stringRedisTemplate;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private RedisCartStore cartStore;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:cart_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        jdbcTemplate.getJdbcTemplate().execute("CREATE TABLE shopping_cart (id BIGINT PRIMARY KEY, name VARCHAR(50), " +
+                "image VARCHAR(100), user_id BIGINT NOT NULL, dish_id BIGINT, setmeal_id BIGINT, dish_flavor VARCHAR(50), " +
+                "number INT NOT NULL DEFAULT 1, amount DECIMAL(10, 2) NOT NULL, create_time TIMESTAMP, " +
+                "update_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+
+        cartStore = new RedisCartStore(stringRedisTemplate, new SnowflakeIdGenerator(1, 10), jdbcTemplate,
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)), new JobLease(stringRedisTemplate));
+        ReflectionTestUtils.setField(cartStore, "ttlDays", 7L);
+        ReflectionTestUtils.setField(cartStore, "writeBehindEnabled", true);
+        ReflectionTestUtils.setField(cartStore, "writeBehindBatchSize", 100);
+        ReflectionTestUtils.setField(cartStore, "writeBehindLeaseSeconds", 60L);
+    }
+
+    @AfterEach
+    void flushRedis() {
+        stringRedisTemplate.execute(connection -> {
+            connection.flushDb();
+            return null;
+        }, true);
+    }
+
+    @Test
+    void addAndSub() {
+        assertThat(cartStore.add(USER_ID, dish(10L)).getNumber()).isEqualTo(1);
+        assertThat(cartStore.add(USER_ID, dish(10L)).getNumber()).isEqualTo(2);
+        assertThat(cartStore.list(USER_ID)).singleElement()
+                .satisfies(item -> assertThat(item.getNumber()).isEqualTo(2));
+
+        assertThat(cartStore.sub(USER_ID, dish(10L)).getNumber()).isEqualTo(1);
+        assertThat(cartStore.sub(USER_ID, dish(10L)).getNumber()).isEqualTo(0);
+        assertThat(cartStore.list(USER_ID)).isEmpty();
+        assertThat(cartStore.sub(USER_ID, dish(10L))).isNull();
+    }
+
+    @Test
+    void applyDeltas() {
+        List<ShoppingCart> cart = cartStore.applyDeltas(USER_ID, Arrays.asList(delta(dish(10L), 3), delta(setmeal(20L), 1)));
+        assertThat(cart).extracting(ShoppingCart::getNumber).containsExactlyInAnyOrder(3, 1);
+
+        cart = cartStore.applyDeltas(USER_ID, Arrays.asList(delta(dish(10L), -3), delta(setmeal(30L), -1)));
+        assertThat(cart).singleElement().satisfies(item -> {
+            assertThat(item.getSetmealId()).isEqualTo(20L);
+            assertThat(item.getNumber()).isEqualTo(1);
+        });
+    }
+
+    @Test
+    void loadsRecentRowsFromTableOnFirstAccess() {
+        insertRow(100L, 10L, null, 2, LocalDateTime.now().minusDays(1));
+        // 已经超过保存天数的数据不加载
+        insertRow(101L, null, 20L, 1, LocalDateTime.now().minusDays(8));
+
+        assertThat(cartStore.list(USER_ID)).singleElement().satisfies(item -> {
+            assertThat(item.getId()).isEqualTo(100L);
+            assertThat(item.getNumber()).isEqualTo(2);
+        });
+        assertThat(cartStore.add(USER_ID, dish(10L)).getNumber()).isEqualTo(3);
+    }
+
+    @Test
+    void clearedCartIsNotReloadedFromTable() {
+        insertRow(100L, 10L, null, 2, LocalDateTime.now());
+        assertThat(cartStore.list(USER_ID)).hasSize(1);
+
+        cartStore.clear(USER_ID);
+        // 表中的数据尚未同步，清空后也不能再次加载
+        assertThat(cartStore.list(USER_ID)).isEmpty();
+    }
+
+    @Test
+    void flushWritesCartToTable() {
+        insertRow(100L, 10L, null, 2, LocalDateTime.now());
+        cartStore.add(USER_ID, dish(10L));
+        cartStore.add(USER_ID, setmeal(20L));
+
+        cartStore.flushDirty();
+
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT dish_id, setmeal_id, number FROM shopping_cart WHERE user_id = :userId ORDER BY number DESC",
+                Collections.singletonMap("userId", USER_ID));
+        assertThat(rows).hasSize(2);
+        assertThat(((Number) rows.get(0).get("NUMBER")).intValue()).isEqualTo(3);
+        assertThat(((Number) rows.get(0).get("DISH_ID")).longValue()).isEqualTo(10L);
+        assertThat(((Number) rows.get(1).get("SETMEAL_ID")).longValue()).isEqualTo(20L);
+        assertThat(stringRedisTemplate.opsForSet().size("reggie:cart:dirty")).isZero();
+    }
+
+    private void insertRow(long id, Long dishId, Long setmealId, int number, LocalDateTime updateTime) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", id);
+        params.put("dishId", dishId);
+        params.put("setmealId", setmealId);
+        params.put("number", number);
+        params.put("updateTime", Timestamp.valueOf(updateTime));
+        params.put("userId", USER_ID);
+        jdbcTemplate.update("INSERT INTO shopping_cart (id, name, user_id, dish_id, setmeal_id, number, amount, create_time, update_time) " +
+                "VALUES (:id, 'item', :userId, :dishId, :setmealId, :number, 10.00, :updateTime, :updateTime)", params);
+    }
+
+    private static ShoppingCart dish(Long dishId) {
+        ShoppingCart item = new ShoppingCart();
+        item.setDishId(dishId);
+        item.setName("dish" + dishId);
+        item.setAmount(new BigDecimal("10.00"));
+        return item;
+    }
+
+    private static ShoppingCart setmeal(Long setmealId) {
+        ShoppingCart item = new ShoppingCart();
+        item.setSetmealId(setmealId);
+        item.setName("setmeal" + setmealId);
+        item.setAmount(new BigDecimal("30.00"));
+        return item;
+    }
+
+    private static ShoppingCartDelta delta(ShoppingCart item, int delta) {
+        ShoppingCartDelta shoppingCartDelta = new ShoppingCartDelta();
+        BeanUtils.copyProperties(item, shoppingCartDelta);
+        shoppingCartDelta.setDelta(delta);
+        return shoppingCartDelta;
+    }
+}
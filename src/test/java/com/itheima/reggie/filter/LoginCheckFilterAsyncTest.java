@@ -0,0 +1,118 @@
+package com.itheima.reggie.filter;
+
+import com.itheima.reggie.auth.LoginManager;
+import com.itheima.reggie.auth.LoginPrincipal;
+import com.itheima.reggie.auth.LoginType;
+import com.itheima.reggie.common.JacksonObjectMapper;
+import com.itheima.reggie.common.UserInfo;
+import com.itheima.reggie.controller.OrderController;
+import com.itheima.reggie.dto.OrderEvent;
+import com.itheima.reggie.entity.Orders;
+import com.itheima.reggie.order.IdempotentSubmitGuard;
+import com.itheima.reggie.order.OrderEventHub;
+import com.itheima.reggie.order.OrderSubmitPipeline;
+import com.itheima.reggie.service.OrderDetailService;
+import com.itheima.reggie.service.OrderService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.boot.web.servlet.ServletComponentScan;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * 经过LoginCheckFilter的 /order/events 连接能够保持打开并收到订单事件(过滤器必须支持异步请求)
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        classes = LoginCheckFilterAsyncTest.TestApplication.class,
+        properties = "project.order.events.enabled=true")
+class LoginCheckFilterAsyncTest {
+
+    @ImportAutoConfiguration({PropertyPlaceholderAutoConfiguration.class, ServletWebServerFactoryAutoConfiguration.class,
+            DispatcherServletAutoConfiguration.class, WebMvcAutoConfiguration.class,
+            HttpMessageConvertersAutoConfiguration.class, JacksonAutoConfiguration.class})
+    @ServletComponentScan(basePackageClasses = LoginCheckFilter.class)
+    @Import({OrderController.class, OrderEventHub.class, UserInfo.class})
+    @SpringBootConfiguration
+    static class TestApplication {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private OrderEventHub orderEventHub;
+
+    @MockBean
+    private LoginManager loginManager;
+    @MockBean
+    private StringRedisTemplate stringRedisTemplate;
+    @MockBean
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @MockBean
+    private OrderService orderService;
+    @MockBean
+    private OrderDetailService orderDetailService;
+    @MockBean
+    private OrderSubmitPipeline orderSubmitPipeline;
+    @MockBean
+    private IdempotentSubmitGuard idempotentSubmitGuard;
+
+    @Test
+    void employeeReceivesOrderEvent() throws Exception {
+        when(loginManager.authenticate(any(), any())).thenReturn(new LoginPrincipal(LoginType.EMPLOYEE, 1L));
+        // 先收到事件，订阅时携带Last-Event-ID立即补发：Tomcat在写出第一个事件之前不会返回响应头
+        Orders orders = new Orders();
+        orders.setId(100L);
+        String body = new JacksonObjectMapper().writeValueAsString(
+                new OrderEvent(1L, OrderEvent.CREATED, Collections.singletonList(orders)));
+        orderEventHub.onMessage(new DefaultMessage(OrderEventHub.CHANNEL.getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8)), null);
+
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/order/events").openConnection();
+        connection.setRequestProperty("Last-Event-ID", "0");
+        connection.setReadTimeout(10000);
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("text/event-stream"));
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null && !line.startsWith("event:")) {
+                // 跳过事件之前的内容
+            }
+            assertEquals("event:" + OrderEvent.CREATED, line);
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.itheima.reggie.idgen;
+
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 32个线程同时生成id时，SnowflakeIdGenerator(CAS)与MyBatis-Plus默认的IdWorker(synchronized)的吞吐量对比
+ * <p>
+ * 两者每毫秒最多都只能生成4096个id，吞吐量的上限相同，对比的是达到上限前的竞争开销。
+ * 不在mvn test中执行，运行main方法即可
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+public class IdGeneratorBenchmark {
+
+    private final SnowflakeIdGenerator snowflakeIdGenerator = new SnowflakeIdGenerator(1, 10);
+
+    @Benchmark
+    public long snowflake() {
+        return snowflakeIdGenerator.nextId();
+    }
+
+    @Benchmark
+    public long idWorker() {
+        return IdWorker.getId();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(IdGeneratorBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
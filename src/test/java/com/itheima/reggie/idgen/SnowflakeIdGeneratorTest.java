@@ -0,0 +1,31 @@
+package com.itheima.reggie.idgen;
+
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 切换到SnowflakeIdGenerator后，新id必须大于IdWorker生成的已有id
+ */
+class SnowflakeIdGeneratorTest {
+
+    /**
+     * db_reggie.sql中IdWorker生成的数据id
+     */
+    private static final long EXISTING_ID = 1415580119015145474L;
+
+    @Test
+    void newIdsAreGreaterThanExistingIdWorkerIds() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1023, 10);
+        long idWorkerId = IdWorker.getId();
+        long last = generator.nextId();
+        assertTrue(last > EXISTING_ID);
+        assertTrue(last >= idWorkerId >>> 22 << 22);
+        for (int i = 0; i < 10000; i++) {
+            long next = generator.nextId();
+            assertTrue(next > last);
+            last = next;
+        }
+    }
+}
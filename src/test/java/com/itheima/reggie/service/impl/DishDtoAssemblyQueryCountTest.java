@@ -0,0 +1,154 @@
+package com.itheima.reggie.service.impl;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.itheima.reggie.dto.DishDto;
+import com.itheima.reggie.entity.Dish;
+import com.itheima.reggie.mapper.CategoryMapper;
+import com.itheima.reggie.mapper.DishFlavorMapper;
+import com.itheima.reggie.mapper.DishMapper;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.LocalCacheScope;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 管理端菜品分页转换为DTO时，执行的SQL条数不随每页菜品数量增长
+ */
+class DishDtoAssemblyQueryCountTest {
+
+    /**
+     * 分类名称一条IN查询 + 口味一条IN查询
+     */
+    private static final int EXPECTED_STATEMENTS = 2;
+
+    private final StatementCounter statementCounter = new StatementCounter();
+    private JdbcDataSource dataSource;
+    private SqlSession sqlSession;
+    private DishServiceImpl dishService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:dish_dto_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        execute("CREATE TABLE category (id BIGINT PRIMARY KEY, type INT, name VARCHAR(64), sort INT, " +
+                        "create_time TIMESTAMP, update_time TIMESTAMP, create_user BIGINT)",
+                "CREATE TABLE dish (id BIGINT PRIMARY KEY, name VARCHAR(64), category_id BIGINT, price DECIMAL(10, 2), " +
+                        "code VARCHAR(64), image VARCHAR(200), description VARCHAR(400), status INT, sort INT, " +
+                        "create_time TIMESTAMP, update_time TIMESTAMP, create_user BIGINT, update_user BIGINT, is_deleted INT)",
+                "CREATE TABLE dish_flavor (id BIGINT PRIMARY KEY, dish_id BIGINT, name VARCHAR(64), `value` VARCHAR(500), " +
+                        "create_time TIMESTAMP, update_time TIMESTAMP, create_user BIGINT, update_user BIGINT, is_deleted INT)");
+
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        // 关闭会话级缓存，每次查询都真正执行SQL
+        configuration.setLocalCacheScope(LocalCacheScope.STATEMENT);
+        configuration.setEnvironment(new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.addMapper(CategoryMapper.class);
+        configuration.addMapper(DishMapper.class);
+        configuration.addMapper(DishFlavorMapper.class);
+        configuration.addInterceptor(statementCounter);
+        sqlSession = new MybatisSqlSessionFactoryBuilder().build(configuration).openSession(true);
+
+        CategoryServiceImpl categoryService = new CategoryServiceImpl(null);
+        ReflectionTestUtils.setField(categoryService, "baseMapper", sqlSession.getMapper(CategoryMapper.class));
+        DishFlavorServiceImpl dishFlavorService = new DishFlavorServiceImpl();
+        ReflectionTestUtils.setField(dishFlavorService, "baseMapper", sqlSession.getMapper(DishFlavorMapper.class));
+        dishService = new DishServiceImpl(dishFlavorService, null);
+        ReflectionTestUtils.setField(dishService, "baseMapper", sqlSession.getMapper(DishMapper.class));
+        ReflectionTestUtils.setField(dishService, "categoryService", categoryService);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        sqlSession.close();
+        execute("DROP ALL OBJECTS");
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 50})
+    void statementCountIsConstantPerPage(int pageSize) throws Exception {
+        insertDishes(pageSize);
+        Page<Dish> dishPage = new Page<>(1, pageSize);
+        dishPage.setRecords(dishService.list());
+
+        statementCounter.reset();
+        Page<DishDto> dishDtoPage = dishService.convertToDishDtoPage(dishPage);
+
+        assertThat(statementCounter.get()).isEqualTo(EXPECTED_STATEMENTS);
+        List<DishDto> records = dishDtoPage.getRecords();
+        assertThat(records).hasSize(pageSize);
+        assertThat(records).allSatisfy(dishDto -> {
+            assertThat(dishDto.getCategoryName()).isEqualTo("分类" + dishDto.getCategoryId());
+            assertThat(dishDto.getFlavors()).hasSize(2)
+                    .allSatisfy(flavor -> assertThat(flavor.getDishId()).isEqualTo(dishDto.getId()));
+        });
+    }
+
+    /**
+     * 每个菜品属于3个分类之一，各有2条口味数据
+     */
+    private void insertDishes(int count) throws Exception {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            for (long categoryId = 1; categoryId <= 3; categoryId++) {
+                statement.addBatch("INSERT INTO category (id, type, name, sort) VALUES (" + categoryId + ", 1, '分类" + categoryId + "', 0)");
+            }
+            for (long dishId = 1; dishId <= count; dishId++) {
+                statement.addBatch("INSERT INTO dish (id, name, category_id, price, status, sort, is_deleted) VALUES (" +
+                        dishId + ", '菜品" + dishId + "', " + (dishId % 3 + 1) + ", 1000, 1, 0, 0)");
+                statement.addBatch("INSERT INTO dish_flavor (id, dish_id, name, `value`, is_deleted) VALUES (" +
+                        (dishId * 10 + 1) + ", " + dishId + ", '辣度', '[]', 0)");
+                statement.addBatch("INSERT INTO dish_flavor (id, dish_id, name, `value`, is_deleted) VALUES (" +
+                        (dishId * 10 + 2) + ", " + dishId + ", '温度', '[]', 0)");
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private void execute(String... sqls) throws Exception {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            for (String sql : sqls) statement.execute(sql);
+        }
+    }
+
+    /**
+     * 统计实际发送到数据库的语句数
+     */
+    @Intercepts(@Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class}))
+    static class StatementCounter implements Interceptor {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Object intercept(Invocation invocation) throws Throwable {
+            count.incrementAndGet();
+            return invocation.proceed();
+        }
+
+        void reset() {
+            count.set(0);
+        }
+
+        int get() {
+            return count.get();
+        }
+    }
+}